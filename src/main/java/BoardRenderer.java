@@ -0,0 +1,186 @@
+import piece.IPiece;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Renders a ChessBoard without building intermediate strings. Every piece of output is precomputed once, both as a
+ * String for Appendable targets and as UTF-8 bytes for ByteBuffer targets.
+ *
+ * The full rendering is the box-drawing board of ChessBoard.toString(). A renderer instance also remembers the last
+ * board it rendered, so that renderDiff can emit only the squares that changed since then. A diff is one line of
+ * space separated entries "xyGG", where x and y are the square's digits and GG is the piece glyph, or ".." for an
+ * empty square, for example "41.. 43WP\n".
+ */
+public class BoardRenderer {
+    private static final String EMPTY = "  ";
+    private static final String DIFF_EMPTY = "..";
+    private static final String[] GLYPHS = {"WP", "WN", "WB", "WC", "WQ", "WK", "BP", "BN", "BB", "BC", "BQ", "BK"};
+
+    private static final String HEADER = "\n\u2554" + repeat("\u2550\u2550\u2550\u2550\u2566", 7) + "\u2550\u2550\u2550\u2550\u2557\n";
+    private static final String ROW_START = "\u2551 ";
+    private static final String CELL_END = " \u2551 ";
+    private static final String SEPARATOR = "\n\u2551" + repeat("\u2550\u2550\u2550\u2550\u256C", 7) + "\u2550\u2550\u2550\u2550\u2563\n";
+    private static final String FOOTER = "\n\u255A" + repeat("\u2550\u2550\u2550\u2550\u2569", 7) + "\u2550\u2550\u2550\u2550\u255D";
+
+    private static final byte[] HEADER_BYTES = HEADER.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ROW_START_BYTES = ROW_START.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CELL_END_BYTES = CELL_END.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SEPARATOR_BYTES = SEPARATOR.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FOOTER_BYTES = FOOTER.getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Number of chars in a full rendering.
+     */
+    static final int FULL_LENGTH = HEADER.length() + 8 * (ROW_START.length() + 8 * (2 + CELL_END.length()))
+            + 7 * SEPARATOR.length() + FOOTER.length();
+
+    /**
+     * Number of bytes in a full UTF-8 rendering.
+     */
+    static final int FULL_BYTES = HEADER_BYTES.length + 8 * (ROW_START_BYTES.length + 8 * (2 + CELL_END_BYTES.length))
+            + 7 * SEPARATOR_BYTES.length + FOOTER_BYTES.length;
+
+    /**
+     * Largest possible diff in bytes: all 64 squares plus the line terminator.
+     */
+    static final int MAX_DIFF_BYTES = 64 * 5 + 1;
+
+    // glyph code of every square at the last rendering, -1 for empty, indexed x * 8 + y
+    private final byte[] previous;
+
+    /**
+     * Creates a renderer whose first diff is taken against an empty board.
+     */
+    BoardRenderer() {
+        this.previous = new byte[64];
+        Arrays.fill(this.previous, (byte) -1);
+    }
+
+    /**
+     * Writes the full board.
+     * @param board - board to render
+     * @param out - where to write
+     */
+    static void render(ChessBoard board, Appendable out) {
+        try {
+            out.append(HEADER);
+            for (int y = 7; y > -1; y--) {
+                out.append(ROW_START);
+                for (int x = 0; x < 8; x++) {
+                    int code = code(board.pieceAt(x, y));
+                    out.append(code < 0 ? EMPTY : GLYPHS[code]);
+                    out.append(CELL_END);
+                }
+                if (y != 0) {
+                    out.append(SEPARATOR);
+                }
+            }
+            out.append(FOOTER);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the full board as UTF-8.
+     * @param board - board to render
+     * @param out - buffer with at least FULL_BYTES remaining
+     */
+    static void render(ChessBoard board, ByteBuffer out) {
+        out.put(HEADER_BYTES);
+        for (int y = 7; y > -1; y--) {
+            out.put(ROW_START_BYTES);
+            for (int x = 0; x < 8; x++) {
+                putGlyph(out, code(board.pieceAt(x, y)), EMPTY);
+                out.put(CELL_END_BYTES);
+            }
+            if (y != 0) {
+                out.put(SEPARATOR_BYTES);
+            }
+        }
+        out.put(FOOTER_BYTES);
+    }
+
+    /**
+     * Writes the squares that changed since the previous call, and remembers the board for the next one.
+     * @param board - board to render
+     * @param out - where to write
+     * @return number of squares written
+     */
+    int renderDiff(ChessBoard board, Appendable out) {
+        try {
+            int changed = 0;
+            for (int x = 0; x < 8; x++) {
+                for (int y = 0; y < 8; y++) {
+                    int code = code(board.pieceAt(x, y));
+                    if (this.previous[x * 8 + y] != code) {
+                        this.previous[x * 8 + y] = (byte) code;
+                        if (changed++ > 0) {
+                            out.append(' ');
+                        }
+                        out.append((char) ('0' + x)).append((char) ('0' + y));
+                        out.append(code < 0 ? DIFF_EMPTY : GLYPHS[code]);
+                    }
+                }
+            }
+            out.append('\n');
+            return changed;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the squares that changed since the previous call, and remembers the board for the next one.
+     * @param board - board to render
+     * @param out - buffer with at least MAX_DIFF_BYTES remaining
+     * @return number of squares written
+     */
+    int renderDiff(ChessBoard board, ByteBuffer out) {
+        int changed = 0;
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                int code = code(board.pieceAt(x, y));
+                if (this.previous[x * 8 + y] != code) {
+                    this.previous[x * 8 + y] = (byte) code;
+                    if (changed++ > 0) {
+                        out.put((byte) ' ');
+                    }
+                    out.put((byte) ('0' + x)).put((byte) ('0' + y));
+                    putGlyph(out, code, DIFF_EMPTY);
+                }
+            }
+        }
+        out.put((byte) '\n');
+        return changed;
+    }
+
+    /**
+     * Forgets the previous board, so the next diff lists every occupied square.
+     */
+    void reset() {
+        Arrays.fill(this.previous, (byte) -1);
+    }
+
+    private static int code(IPiece p) {
+        return p == null ? -1 : (p.getIsBlack() ? 6 : 0) + p.getType();
+    }
+
+    private static void putGlyph(ByteBuffer out, int code, String empty) {
+        String glyph = code < 0 ? empty : GLYPHS[code];
+        // glyphs are ASCII, so chars and bytes match
+        out.put((byte) glyph.charAt(0)).put((byte) glyph.charAt(1));
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,27 @@
+import piece.IPiece;
+
+// a player in a BattleOfTheBots match
+public interface Bot {
+
+    /**
+     * @return name shown in the game record
+     */
+    String getName();
+
+    /**
+     * Chooses the next move.
+     * @param board - copy of the current board, indexed [x][y]
+     * @param isWhite - true if the bot plays white
+     * @return the move as {fromX, fromY, toX, toY}
+     */
+    int[] chooseMove(IPiece[][] board, boolean isWhite);
+
+    /**
+     * Tells the bot what it may still spend, just before each chooseMove call. Bots that do not plan their time can
+     * ignore it.
+     * @param moveCpuNanos - thread CPU time allowed for the coming move, over every thread the bot uses
+     * @param gameCpuNanos - thread CPU time left for the rest of the game
+     */
+    default void budgetLeft(long moveCpuNanos, long gameCpuNanos) {
+    }
+}
@@ -0,0 +1,58 @@
+// CPU time and allocation limits for a bot, per move and per game. Use Long.MAX_VALUE for no limit.
+public class BotBudget {
+    public static final BotBudget UNLIMITED = new BotBudget(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final long moveCpuNanos;
+    private final long moveBytes;
+    private final long gameCpuNanos;
+    private final long gameBytes;
+
+    /**
+     * @param moveCpuNanos - thread CPU time allowed for a single move
+     * @param moveBytes - bytes a single move may allocate
+     * @param gameCpuNanos - thread CPU time allowed over the whole game
+     * @param gameBytes - bytes that may be allocated over the whole game
+     */
+    public BotBudget(long moveCpuNanos, long moveBytes, long gameCpuNanos, long gameBytes) {
+        if (moveCpuNanos <= 0 || moveBytes <= 0 || gameCpuNanos <= 0 || gameBytes <= 0) {
+            throw new IllegalArgumentException("Budgets must be positive");
+        }
+        this.moveCpuNanos = moveCpuNanos;
+        this.moveBytes = moveBytes;
+        this.gameCpuNanos = gameCpuNanos;
+        this.gameBytes = gameBytes;
+    }
+
+    public long getMoveCpuNanos() {
+        return this.moveCpuNanos;
+    }
+
+    public long getMoveBytes() {
+        return this.moveBytes;
+    }
+
+    public long getGameCpuNanos() {
+        return this.gameCpuNanos;
+    }
+
+    public long getGameBytes() {
+        return this.gameBytes;
+    }
+
+    /**
+     * Returns why the given usage breaks this budget.
+     * @return the reason, or null if the usage is within budget
+     */
+    String checkUsage(long moveCpu, long moveAllocated, long gameCpu, long gameAllocated) {
+        if (moveCpu > this.moveCpuNanos) {
+            return "Move CPU budget exceeded";
+        } else if (moveAllocated > this.moveBytes) {
+            return "Move allocation budget exceeded";
+        } else if (gameCpu > this.gameCpuNanos) {
+            return "Game CPU budget exceeded";
+        } else if (gameAllocated > this.gameBytes) {
+            return "Game allocation budget exceeded";
+        }
+        return null;
+    }
+}
@@ -1,17 +1,36 @@
 import common.Coord;
+import common.Moves;
+import common.Zobrist;
+import metrics.Metrics;
 import piece.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 // represents a chess board
 public class ChessBoard {
+    /**
+     * Upper bound on the number of legal moves in any position, for sizing the array given to legalMoves.
+     */
+    static final int MAX_MOVES = 256;
+
     private IPiece[][] board;
     private List<IPiece> whitePieces;
     private List<IPiece> blackPieces;
     private boolean whiteTurn;
     private List<IPiece[][]> history;
+    private boolean keepHistory;
     private int movesSoFar;
+    private int halfMoveClock;
+    private long positionHash;
+    private long pawnHash;
+    private long materialSignature;
+    private long[] hashHistory;
+    private int hashCount;
+    private Undo[] undoStack = new Undo[16];
+    private int undoCount;
+    private MoveObserver observer;
 
     /*
         ################################
@@ -20,16 +39,32 @@ public class ChessBoard {
      */
 
     ChessBoard() {
+        this(true);
+    }
+
+    /**
+     * Creates a new game.
+     * @param keepHistory - whether to keep a copy of the board for every ply. Without it only the position hashes are
+     *                    kept, which is all that repetition detection needs and keeps a hosted game small.
+     */
+    ChessBoard(boolean keepHistory) {
+        this.keepHistory = keepHistory;
         this.whitePieces = new ArrayList<>();
         this.blackPieces = new ArrayList<>();
         this.board = generateChessBoard();
         this.whiteTurn = true;
         this.history = new ArrayList<>();
+        this.hashHistory = new long[64];
         this.movesSoFar = 0;
         this.recordHistory();
     }
 
-    private ChessBoard(IPiece[][] board, boolean whiteTurn) {
+    /**
+     * Creates a game from an arbitrary position. The pieces on the given board are used as is.
+     * @param board - 8x8 grid of pieces, indexed [x][y]
+     * @param whiteTurn - true if white is to move
+     */
+    ChessBoard(IPiece[][] board, boolean whiteTurn) {
         if (board.length != 8 || board[0].length != 8) {
             throw new IllegalArgumentException("Board is not regulation size");
         }
@@ -38,8 +73,14 @@ public class ChessBoard {
         this.board = board;
         this.whiteTurn = whiteTurn;
         this.history = new ArrayList<>();
+        this.keepHistory = true;
+        this.hashHistory = new long[64];
         movesSoFar = 0;
         this.initPieces();
+        if (!whiteTurn) {
+            this.positionHash ^= Zobrist.sideKey();
+        }
+        this.recordHistory();
     }
 
     /*
@@ -57,15 +98,35 @@ public class ChessBoard {
      * @return - true if valid move*, false otherwise
      */
     boolean playGame(int fromX, int fromY, int toX, int toY) {
-        if (this.isValidMove(fromX, fromY, toX, toY)) {
-            this.makeMove(fromX, fromY, toX, toY);
-            this.nextTurn();
-            return true;
-        } else {
-            return false;
+        long nanos = Metrics.PLAY_GAME.startNanos();
+        long bytes = Metrics.PLAY_GAME.startBytes();
+        try {
+            if (this.isValidMove(fromX, fromY, toX, toY)) {
+                this.makeMove(fromX, fromY, toX, toY);
+                this.nextTurn();
+                if (this.observer != null) {
+                    this.observer.positionChanged();
+                }
+                return true;
+            } else {
+                return false;
+            }
+        } catch (IllegalArgumentException e) {
+            Metrics.PLAY_GAME.reject(e.getMessage());
+            throw e;
+        } finally {
+            Metrics.PLAY_GAME.record(nanos, bytes);
         }
     }
 
+    /**
+     * Checks a move exactly as playGame does, without playing it.
+     * @throws IllegalArgumentException with the reason if the move is not valid
+     */
+    void validateMove(int fromX, int fromY, int toX, int toY) {
+        this.isValidMove(fromX, fromY, toX, toY);
+    }
+
     /**
      * Returns the current turn
      * @return true if white's turn, false if black's
@@ -74,61 +135,233 @@ public class ChessBoard {
         return this.whiteTurn;
     }
 
-    public String toString() {
-        StringBuilder sb = new StringBuilder();
-        //header
-        sb.append("\n╔");
-        for (int s = 0; s < 7; s++) {
-            sb.append("════╦");
+    /**
+     * Determines whether the game has ended, and how. Stops at the first legal move it finds, so the common
+     * case of an ongoing game costs only a handful of piece checks.
+     * @return the current status of the game
+     */
+    GameStatus getGameStatus() {
+        if (this.isInsufficientMaterial()) {
+            return GameStatus.INSUFFICIENT_MATERIAL;
+        } else if (!this.hasLegalMove()) {
+            return this.isInCheck() ? GameStatus.CHECKMATE : GameStatus.STALEMATE;
+        } else if (this.halfMoveClock >= 100) {
+            return GameStatus.FIFTY_MOVE;
+        } else if (this.isRepetition()) {
+            return GameStatus.REPETITION;
         }
-        sb.append("════╗\n");
+        return GameStatus.ONGOING;
+    }
 
-        //body
-        for (int i = 7; i > -1; i--) {
-            sb.append("║ ");
-            for (int j = 0; j < 8; j++) {
-                IPiece current = board[j][i];
-                if (current == null)
-                    sb.append("  ");
-                else {
-                    sb.append(current.toString());
-                }
-                sb.append(" ║ ");
-            }
-            if (i != 0) {
-                sb.append("\n║");
-                for (int s = 0; s < 7; s++) {
-                    sb.append("════╬");
+    /**
+     * @return true if the game can no longer continue
+     */
+    boolean isGameOver() {
+        return this.getGameStatus().isOver();
+    }
+
+    /**
+     * Lists every legal move of the current player: moves the pieces allow that do not leave the king in check.
+     * Castling is also refused when the king is in check or passes through an attacked square.
+     * @param moves - receives the moves packed by common.Moves, at least MAX_MOVES long
+     * @return number of moves written
+     */
+    int legalMoves(int[] moves) {
+        int count = 0;
+        for (IPiece p : (this.whiteTurn ? this.whitePieces : this.blackPieces)) {
+            int fromX = p.getX();
+            int fromY = p.getY();
+            for (int to : MoveTargets.targets(p.getType(), p.getIsBlack(), fromX * 8 + fromY)) {
+                if (this.isLegalMove(p, fromX, fromY, to / 8, to % 8)) {
+                    moves[count++] = Moves.pack(fromX, fromY, to / 8, to % 8);
                 }
-                sb.append("════╣");
-                sb.append("\n");
             }
         }
-        //footer
-        sb.append("\n╚");
-        for (int s = 0; s < 7; s++) {
-            sb.append("════╩");
+        return count;
+    }
+
+    /**
+     * Plays a move without validating it, remembering what is needed to take it back with undoMove. Meant for
+     * searches that only play moves returned by legalMoves.
+     * @param move - packed move
+     */
+    void doMove(int move) {
+        int fromX = Moves.fromX(move);
+        int fromY = Moves.fromY(move);
+        int toX = Moves.toX(move);
+        int toY = Moves.toY(move);
+        if (this.undoCount == this.undoStack.length) {
+            this.undoStack = Arrays.copyOf(this.undoStack, this.undoCount * 2);
+        }
+        Undo undo = this.undoStack[this.undoCount];
+        if (undo == null) {
+            undo = this.undoStack[this.undoCount] = new Undo();
         }
-        sb.append("════╝");
-            /*
-        StringBuilder sb = new StringBuilder();
-        for (int i = 7; i > -1; i--) {
-            for (int j = 0; j < 8; j++) {
-                IPiece current = board[j][i];
-                if (current == null)
-                    sb.append("XX");
-                else {
-                    sb.append(current.toString());
-                }
-                sb.append(" ");
+        this.undoCount++;
+        undo.move = move;
+        undo.moved = this.board[fromX][fromY];
+        undo.movedFirst = undo.moved.getIsFirstMove();
+        undo.captured = this.board[toX][toY];
+        undo.rook = null;
+        undo.halfMoveClock = this.halfMoveClock;
+        undo.positionHash = this.positionHash;
+        undo.pawnHash = this.pawnHash;
+        undo.materialSignature = this.materialSignature;
+        if (undo.moved.getType() == IPiece.KING && Math.abs(toX - fromX) == 2) {
+            undo.rook = this.board[toX > fromX ? 7 : 0][fromY];
+        }
+
+        if (this.observer != null) {
+            this.observer.beforeMove(move);
+        }
+        this.makeMove(fromX, fromY, toX, toY);
+        this.nextTurn();
+    }
+
+    /**
+     * Takes back the last move played with doMove.
+     */
+    void undoMove() {
+        if (this.undoCount == 0) {
+            throw new IllegalStateException("No move to undo");
+        }
+        Undo undo = this.undoStack[--this.undoCount];
+        int fromX = Moves.fromX(undo.move);
+        int fromY = Moves.fromY(undo.move);
+        int toX = Moves.toX(undo.move);
+        int toY = Moves.toY(undo.move);
+
+        this.whiteTurn = !this.whiteTurn;
+        this.movesSoFar--;
+        this.hashCount--;
+        if (this.keepHistory) {
+            this.history.remove(this.history.size() - 1);
+        }
+        this.board[fromX][fromY] = undo.moved;
+        this.board[toX][toY] = undo.captured;
+        undo.moved.undoMove(fromX, fromY, undo.movedFirst);
+        if (undo.captured != null) {
+            (undo.captured.getIsBlack() ? this.blackPieces : this.whitePieces).add(undo.captured);
+        }
+        if (undo.rook != null && !undo.rook.getIsFirstMove()) {
+            int rookX = toX > fromX ? 7 : 0;
+            this.board[undo.rook.getX()][toY] = null;
+            this.board[rookX][toY] = undo.rook;
+            undo.rook.undoMove(rookX, toY, true);
+        }
+        this.halfMoveClock = undo.halfMoveClock;
+        this.positionHash = undo.positionHash;
+        this.pawnHash = undo.pawnHash;
+        this.materialSignature = undo.materialSignature;
+        if (this.observer != null) {
+            this.observer.afterUndo();
+        }
+    }
+
+    /**
+     * Sets the observer told about moves played with doMove and undoMove, or null for none. It is also told when
+     * playGame changes the position.
+     */
+    void setObserver(MoveObserver observer) {
+        this.observer = observer;
+    }
+
+    /**
+     * @return true if the move captures a piece
+     */
+    boolean isCapture(int move) {
+        return this.board[Moves.toX(move)][Moves.toY(move)] != null;
+    }
+
+    /**
+     * Checks the draws that need no move search: fifty moves, threefold repetition and insufficient material.
+     * @return true if the game is drawn by one of these rules
+     */
+    boolean isDrawByRule() {
+        return this.halfMoveClock >= 100 || this.isRepetition() || this.isInsufficientMaterial();
+    }
+
+    /**
+     * Makes an independent copy of the position, keeping the hashes needed to detect repetition but not the board
+     * history. Moves played on the copy do not affect this board.
+     */
+    ChessBoard copy() {
+        IPiece[][] grid = new IPiece[8][8];
+        for (IPiece p : this.whitePieces) {
+            grid[p.getX()][p.getY()] = p.copy();
+        }
+        for (IPiece p : this.blackPieces) {
+            grid[p.getX()][p.getY()] = p.copy();
+        }
+        ChessBoard copy = new ChessBoard(grid, this.whiteTurn);
+        copy.keepHistory = false;
+        copy.history.clear();
+        copy.movesSoFar = this.movesSoFar;
+        copy.halfMoveClock = this.halfMoveClock;
+        copy.hashHistory = Arrays.copyOf(this.hashHistory, this.hashHistory.length);
+        copy.hashCount = this.hashCount;
+        return copy;
+    }
+
+    /**
+     * Returns the castling rights of the position as the four bits taken by Zobrist.castleKey. A right is held while
+     * the king and that rook are both unmoved.
+     */
+    int castlingRights() {
+        int rights = 0;
+        for (int side = 0; side < 2; side++) {
+            int y = side * 7;
+            if (isUnmoved(this.board[4][y], IPiece.KING)) {
+                rights |= isUnmoved(this.board[7][y], IPiece.ROOK) ? 1 << (side * 2) : 0;
+                rights |= isUnmoved(this.board[0][y], IPiece.ROOK) ? 2 << (side * 2) : 0;
             }
-            sb.append("\n");
         }
-        */
+        return rights;
+    }
+
+    /**
+     * Returns the position hash combined with the castling rights. Two positions with the same key have the same
+     * legal moves, so the key suits caches of move generation results.
+     */
+    long getPositionKey() {
+        return this.positionHash ^ Zobrist.castleKey(this.castlingRights());
+    }
+
+    /**
+     * Returns the Zobrist hash of the pawns alone. It changes far less often than the position hash, so it keys
+     * caches of pawn structure evaluation.
+     */
+    long getPawnHash() {
+        return this.pawnHash;
+    }
+
+    /**
+     * Returns the Zobrist hash of the current position, including the side to move.
+     * @return hash of the current position
+     */
+    long getPositionHash() {
+        return this.positionHash;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder(BoardRenderer.FULL_LENGTH);
+        BoardRenderer.render(this, sb);
         return sb.toString();
     }
 
+    /**
+     * Returns the piece on a square without copying it. Callers must not modify it.
+     * @param x - x-coordinate of the square
+     * @param y - y-coordinate of the square
+     * @return the piece, or null if the square is empty
+     */
+    IPiece pieceAt(int x, int y) {
+        return this.board[x][y];
+    }
+
     public IPiece[][] getBoard() {
+        long nanos = Metrics.GET_BOARD.startNanos();
+        long bytes = Metrics.GET_BOARD.startBytes();
         IPiece[][] newBoard = new IPiece[8][8];
 
         for (IPiece p : this.whitePieces) {
@@ -137,6 +370,7 @@ public class ChessBoard {
         for (IPiece p : this.blackPieces) {
             newBoard[p.getX()][p.getY()] = p.copy();
         }
+        Metrics.GET_BOARD.record(nanos, bytes);
         return newBoard;
     }
 
@@ -163,6 +397,8 @@ public class ChessBoard {
 
         if (isValidMove(fromCastleX, y, toCastleX, y)) {
             IPiece castle = this.board[fromCastleX][y];
+            this.positionHash ^= Zobrist.pieceKey(IPiece.ROOK, castle.getIsBlack(), fromCastleX, y)
+                    ^ Zobrist.pieceKey(IPiece.ROOK, castle.getIsBlack(), toCastleX, y);
             castle.makeMove(toCastleX, y);
             this.board[fromCastleX][y] = null;
             this.board[toCastleX][y] = castle;
@@ -172,6 +408,7 @@ public class ChessBoard {
     private IPiece addPiece(IPiece piece) {
         if (piece == null) throw new IllegalArgumentException("Piece cannot be null");
         (piece.getIsBlack() ? this.blackPieces : this.whitePieces).add(piece);
+        this.trackPiece(piece);
         return piece;
     }
 
@@ -188,14 +425,23 @@ public class ChessBoard {
         if (movedPiece instanceof King && Math.abs(fromX - toX) == 2) {
             this.executeCastle(fromX, toX, toY);
         }
+        IPiece captured = this.board[toX][toY];
+        this.halfMoveClock = (captured != null || movedPiece.getType() == IPiece.PAWN) ? 0 : this.halfMoveClock + 1;
+        long key = Zobrist.pieceKey(movedPiece.getType(), movedPiece.getIsBlack(), fromX, fromY)
+                ^ Zobrist.pieceKey(movedPiece.getType(), movedPiece.getIsBlack(), toX, toY);
+        this.positionHash ^= key;
+        if (isPawnHashed(movedPiece)) {
+            this.pawnHash ^= key;
+        }
         movedPiece.makeMove(toX, toY);
-        this.removePiece(this.board[toX][toY]);
+        this.removePiece(captured);
         this.board[toX][toY] = movedPiece;
         this.board[fromX][fromY] = null;
     }
 
     /**
-     *  Tests a move in an isolated clone ChessBoard to see if it will result in king in check.
+     *  Tests a move to see if it will result in king in check. The move is made directly on the board grid and
+     *  undone afterwards, so no pieces are copied and the piece lists are left untouched.
      * @param fromX - x-coordinate of target piece
      * @param fromY - y-coordinate of target piece
      * @param toX - x-coordinate of desired location
@@ -203,22 +449,148 @@ public class ChessBoard {
      * @return True if move results in no check, false otherwise
      */
     private boolean testMove(int fromX, int fromY, int toX, int toY){
-        ChessBoard temp = new ChessBoard(this.getBoard(), this.isWhiteTurn());
-        temp.makeMove(fromX, fromY, toX, toY);
-        return !temp.isInCheck();
+        long nanos = Metrics.TEST_MOVE.startNanos();
+        long bytes = Metrics.TEST_MOVE.startBytes();
+        IPiece moved = this.board[fromX][fromY];
+        IPiece captured = this.board[toX][toY];
+        this.board[toX][toY] = moved;
+        this.board[fromX][fromY] = null;
+
+        boolean safe;
+        if (moved.getType() == IPiece.KING) {
+            safe = !this.isInDanger(toX, toY);
+        } else {
+            IPiece king = this.findKing();
+            safe = king != null && !this.isInDanger(king.getX(), king.getY());
+        }
+
+        this.board[fromX][fromY] = moved;
+        this.board[toX][toY] = captured;
+        Metrics.TEST_MOVE.record(nanos, bytes);
+        return safe;
     }
 
     /**
      *  Checks if the current turn's king is in check
      * @return - True if in check, false otherwise
      */
-    private boolean isInCheck(){
+    boolean isInCheck(){
+        long nanos = Metrics.IS_IN_CHECK.startNanos();
+        long bytes = Metrics.IS_IN_CHECK.startBytes();
+        IPiece king = this.findKing();
+        boolean check = king == null || isInDanger(king.getX(), king.getY());
+        Metrics.IS_IN_CHECK.record(nanos, bytes);
+        return check;
+    }
+
+    /**
+     * Finds the current turn's king.
+     * @return the king, or null if the board has none
+     */
+    private IPiece findKing() {
         for (IPiece x : (this.whiteTurn ? this.whitePieces : this.blackPieces) ){
-            if (x.toString().charAt(1) == 'K'){
-                return isInDanger(x.getX(), x.getY());
+            if (x.getType() == IPiece.KING){
+                return x;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Searches for any move the current player can make without leaving their king in check.
+     * @return true as soon as one legal move is found, false if there are none
+     */
+    private boolean hasLegalMove() {
+        for (IPiece p : (this.whiteTurn ? this.whitePieces : this.blackPieces)) {
+            int fromX = p.getX();
+            int fromY = p.getY();
+            for (int to : MoveTargets.targets(p.getType(), p.getIsBlack(), fromX * 8 + fromY)) {
+                if (this.isLegalMove(p, fromX, fromY, to / 8, to % 8)) {
+                    return true;
+                }
             }
         }
-        return true;
+        return false;
+    }
+
+    private static boolean isUnmoved(IPiece p, int type) {
+        return p != null && p.getType() == type && p.getIsFirstMove();
+    }
+
+    /**
+     * Checks a move of the current player against the piece's rules and the safety of the king.
+     * @return true if the move is legal
+     */
+    private boolean isLegalMove(IPiece p, int fromX, int fromY, int toX, int toY) {
+        IPiece to = this.board[toX][toY];
+        if ((to != null && to.getIsBlack() == p.getIsBlack()) || !p.isValidMove(this.board, fromX, fromY, toX, toY)) {
+            return false;
+        }
+        return this.isKingSafeAfter(p, fromX, fromY, toX, toY);
+    }
+
+    /**
+     * Checks that a move the piece allows does not leave the mover's king in check. A castling king must also not
+     * start in check or pass through an attacked square.
+     * @return true if the king is safe
+     */
+    private boolean isKingSafeAfter(IPiece p, int fromX, int fromY, int toX, int toY) {
+        if (p.getType() == IPiece.KING && Math.abs(toX - fromX) == 2
+                && (this.isInCheck() || !this.testMove(fromX, fromY, (fromX + toX) / 2, toY))) {
+            return false;
+        }
+        return this.testMove(fromX, fromY, toX, toY);
+    }
+
+    /**
+     * Checks whether neither side has enough material left to deliver mate: no pawns, rooks or queens, and at most
+     * a single minor piece, or only bishops that all stand on squares of the same color.
+     * @return true if the position is a dead draw
+     */
+    private boolean isInsufficientMaterial() {
+        long heavy = 0;
+        for (int black = 0; black < 2; black++) {
+            heavy |= 0xFL << materialShift(IPiece.PAWN, black == 1)
+                    | 0xFL << materialShift(IPiece.ROOK, black == 1)
+                    | 0xFL << materialShift(IPiece.QUEEN, black == 1);
+        }
+        if ((this.materialSignature & heavy) != 0) {
+            return false;
+        }
+        int knights = this.materialCount(IPiece.KNIGHT, false) + this.materialCount(IPiece.KNIGHT, true);
+        int bishops = this.materialCount(IPiece.BISHOP, false) + this.materialCount(IPiece.BISHOP, true);
+        if (knights + bishops <= 1) {
+            return true;
+        } else if (knights > 0) {
+            return false;
+        }
+        int squareColors = 0;
+        for (List<IPiece> pieces : Arrays.asList(this.whitePieces, this.blackPieces)) {
+            for (IPiece p : pieces) {
+                if (p.getType() == IPiece.BISHOP) {
+                    squareColors |= 1 << ((p.getX() + p.getY()) & 1);
+                }
+            }
+        }
+        return squareColors != 3;
+    }
+
+    /**
+     * Checks whether the current position, castling rights included, has occurred at least three times with the same
+     * player to move. Only the positions since the last capture or pawn move are compared, as no earlier position can
+     * occur again.
+     * @return true if the position has been repeated three times
+     */
+    private boolean isRepetition() {
+        long key = this.getPositionKey();
+        int seen = 1;
+        int oldest = Math.max(0, this.hashCount - 1 - this.halfMoveClock);
+        for (int i = this.hashCount - 3; i >= oldest; i -= 2) {
+            if (this.hashHistory[i] == key && ++seen >= 3) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -229,6 +601,10 @@ public class ChessBoard {
      */
     private boolean isInDanger(int x, int y){
         for (IPiece p : (this.whiteTurn ? this.blackPieces : this.whitePieces) ){
+            // skip a piece that is captured by a move being tested
+            if (this.board[p.getX()][p.getY()] != p) {
+                continue;
+            }
             if ( this.isValidMovePiece(p.getX(), p.getY(), x, y) ) {
                 return true;
             }
@@ -244,6 +620,7 @@ public class ChessBoard {
      * - It is the correct player's turn.
      * - Not moving to a space occupied by space of same color.
      * - Delegates to individual piece logic.
+     * - The move does not leave the player's king in check.
      *
      * @param fromX
      * @param fromY
@@ -251,10 +628,24 @@ public class ChessBoard {
      * @param toY
      * @return will return true if the given move is valid, and will throw an exception otherwise.
      */
-    //TODO: if isInCheck and the resulting move does not remove the player from being in check, then it is an invalid move
-    // use constructor that takes in a 2d board to make a new ChessBoard (feed it this.getBoard(), and this.isWhiteTurn()) to have a copy of the board.
-    // perform the move on this board and if the king is still in check (for the player that moved, than the move is invalid.
     private boolean isValidMove(int fromX, int fromY, int toX, int toY) {
+        long nanos = Metrics.IS_VALID_MOVE.startNanos();
+        long bytes = Metrics.IS_VALID_MOVE.startBytes();
+        try {
+            return this.checkMove(fromX, fromY, toX, toY);
+        } catch (IllegalArgumentException e) {
+            Metrics.IS_VALID_MOVE.reject(e.getMessage());
+            throw e;
+        } finally {
+            Metrics.IS_VALID_MOVE.record(nanos, bytes);
+        }
+    }
+
+    /**
+     * Performs the checks of isValidMove. The king's safety is checked as legalMoves does, so every move accepted
+     * here is also listed there.
+     */
+    private boolean checkMove(int fromX, int fromY, int toX, int toY) {
         if (!coordInsideBoard(fromX, fromY) || !coordInsideBoard(toX, toY)) {
             throw new IllegalArgumentException("Coordinate outside of board");
         } else {
@@ -270,7 +661,7 @@ public class ChessBoard {
                 throw new IllegalArgumentException("Cannot move to square occupied by piece of same color");
             } else if (!from.isValidMove(this.board, fromX, fromY, toX, toY)) {
                 throw new IllegalArgumentException("Invalid move");
-            } else if (this.isInCheck() && !this.testMove(fromX, fromY, toX, toY)) {
+            } else if (!this.isKingSafeAfter(from, fromX, fromY, toX, toY)) {
                 throw new IllegalArgumentException("Move results with King in check");
             }
             return true;
@@ -328,15 +719,23 @@ public class ChessBoard {
      */
     private void nextTurn() {
         this.whiteTurn = !this.whiteTurn;
+        this.positionHash ^= Zobrist.sideKey();
         this.movesSoFar++;
         this.recordHistory();
     }
 
     /**
-     * Will record the current state of the board by adding it to the history fields (List<IPiece[][]>)
+     * Will record the current state of the board by adding it to the history fields (List<IPiece[][]>), along with
+     * the position key, so that positions differing only in castling rights are not taken for repeats.
      */
     private void recordHistory() {
-        this.history.add(this.getBoard());
+        if (this.keepHistory) {
+            this.history.add(this.getBoard());
+        }
+        if (this.hashCount == this.hashHistory.length) {
+            this.hashHistory = Arrays.copyOf(this.hashHistory, this.hashCount * 2);
+        }
+        this.hashHistory[this.hashCount++] = this.getPositionKey();
     }
 
     /**
@@ -348,9 +747,50 @@ public class ChessBoard {
     private void removePiece(IPiece p) {
         if (p != null) {
             (p.getIsBlack() ? this.blackPieces : this.whitePieces).remove(p);
+            long key = Zobrist.pieceKey(p.getType(), p.getIsBlack(), p.getX(), p.getY());
+            this.positionHash ^= key;
+            if (isPawnHashed(p)) {
+                this.pawnHash ^= key;
+            }
+            this.materialSignature -= 1L << materialShift(p.getType(), p.getIsBlack());
         }
     }
 
+    /**
+     * Will add the given piece to the position hash and the material signature.
+     *
+     * @param p the IPiece that was placed on the board.
+     */
+    private void trackPiece(IPiece p) {
+        long key = Zobrist.pieceKey(p.getType(), p.getIsBlack(), p.getX(), p.getY());
+        this.positionHash ^= key;
+        if (isPawnHashed(p)) {
+            this.pawnHash ^= key;
+        }
+        this.materialSignature += 1L << materialShift(p.getType(), p.getIsBlack());
+    }
+
+    /**
+     * Only pawns make up the pawn hash, so that king moves do not change it.
+     */
+    private static boolean isPawnHashed(IPiece p) {
+        return p.getType() == IPiece.PAWN;
+    }
+
+    /**
+     * Returns how many pieces of the given type and color are on the board, as kept in the material signature.
+     */
+    private int materialCount(int type, boolean isBlack) {
+        return (int) (this.materialSignature >>> materialShift(type, isBlack)) & 0xF;
+    }
+
+    /**
+     * The material signature keeps a 4 bit count for every piece type and color.
+     */
+    private static int materialShift(int type, boolean isBlack) {
+        return ((isBlack ? 6 : 0) + type) * 4;
+    }
+
     /**
      * Will initialize fields whitePieces and blackPieces to contain the same pieces that the field board contains in the 2d grid.
      */
@@ -360,8 +800,45 @@ public class ChessBoard {
                 IPiece curr = this.board[i][j];
                 if(curr != null) {
                     (curr.getIsBlack() ? this.blackPieces : this.whitePieces).add(curr);
+                    this.trackPiece(curr);
                 }
             }
         }
     }
+
+    /**
+     * What doMove needs to remember to take a move back.
+     */
+    private static class Undo {
+        private int move;
+        private IPiece moved;
+        private boolean movedFirst;
+        private IPiece captured;
+        private IPiece rook;
+        private int halfMoveClock;
+        private long positionHash;
+        private long pawnHash;
+        private long materialSignature;
+    }
+
+    /**
+     * Follows the moves played with doMove and undoMove, for evaluations kept up to date incrementally.
+     */
+    interface MoveObserver {
+        /**
+         * Called by doMove before the move changes the board, so the pieces involved can still be read.
+         */
+        void beforeMove(int move);
+
+        /**
+         * Called by undoMove once the board is back as it was before the move.
+         */
+        void afterUndo();
+
+        /**
+         * Called by playGame once its move is on the board. Such moves cannot be taken back, so anything kept
+         * incrementally has to be rebuilt from the board.
+         */
+        void positionChanged();
+    }
 }
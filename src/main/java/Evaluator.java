@@ -0,0 +1,257 @@
+import piece.IPiece;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Static evaluation of a ChessBoard: material, a piece-square table for every piece type and the pawn structure terms
+ * of PawnStructure. All weights live in a single int array so they can be tuned and saved:
+ *
+ *  [0..5]                      material value of each IPiece type
+ *  [6 + type * 64 + x * 8 + y] piece-square bonus, with y counted from the piece's own side
+ *  [PAWN_TERMS + term]         weight of each PawnStructure term
+ *
+ * so a black piece on (x, y) reads the entry of a white piece on (x, 7 - y). Scores are in centipawns. Pawn structure
+ * scores are kept in a PawnCache keyed by the pawns alone, which may be shared by all threads using this evaluator;
+ * the king shield, which also depends on the kings, is added on top from the same pawn bitboards.
+ *
+ * The parameter file is an int MAGIC, an int count and then count big-endian ints. Files of the first format,
+ * MAGIC_V1, hold the material and piece-square weights only, and are loaded with the default pawn weights.
+ */
+public class Evaluator {
+    static final int PAWN_TERMS = 6 + 6 * 64;
+    static final int PARAMS = PAWN_TERMS + PawnStructure.TERMS;
+    private static final int MAGIC_V1 = 0x45564131;
+    private static final int MAGIC = 0x45564132;
+    private static final int[] MATERIAL = {100, 320, 330, 500, 900, 0};
+    // passed pawns by rank, doubled, isolated, backward, shield
+    private static final int[] PAWN_WEIGHTS = {0, 5, 10, 20, 35, 60, 100, 0, -10, -15, -8, 10};
+
+    // Written from white's point of view with the eighth rank first, file a to h from left to right.
+    private static final int[][] TABLES = {
+            {
+                      0,   0,   0,   0,   0,   0,   0,   0,
+                     50,  50,  50,  50,  50,  50,  50,  50,
+                     10,  10,  20,  30,  30,  20,  10,  10,
+                      5,   5,  10,  25,  25,  10,   5,   5,
+                      0,   0,   0,  20,  20,   0,   0,   0,
+                      5,  -5, -10,   0,   0, -10,  -5,   5,
+                      5,  10,  10, -20, -20,  10,  10,   5,
+                      0,   0,   0,   0,   0,   0,   0,   0
+            },
+            {
+                    -50, -40, -30, -30, -30, -30, -40, -50,
+                    -40, -20,   0,   0,   0,   0, -20, -40,
+                    -30,   0,  10,  15,  15,  10,   0, -30,
+                    -30,   5,  15,  20,  20,  15,   5, -30,
+                    -30,   0,  15,  20,  20,  15,   0, -30,
+                    -30,   5,  10,  15,  15,  10,   5, -30,
+                    -40, -20,   0,   5,   5,   0, -20, -40,
+                    -50, -40, -30, -30, -30, -30, -40, -50
+            },
+            {
+                    -20, -10, -10, -10, -10, -10, -10, -20,
+                    -10,   0,   0,   0,   0,   0,   0, -10,
+                    -10,   0,   5,  10,  10,   5,   0, -10,
+                    -10,   5,   5,  10,  10,   5,   5, -10,
+                    -10,   0,  10,  10,  10,  10,   0, -10,
+                    -10,  10,  10,  10,  10,  10,  10, -10,
+                    -10,   5,   0,   0,   0,   0,   5, -10,
+                    -20, -10, -10, -10, -10, -10, -10, -20
+            },
+            {
+                      0,   0,   0,   0,   0,   0,   0,   0,
+                      5,  10,  10,  10,  10,  10,  10,   5,
+                     -5,   0,   0,   0,   0,   0,   0,  -5,
+                     -5,   0,   0,   0,   0,   0,   0,  -5,
+                     -5,   0,   0,   0,   0,   0,   0,  -5,
+                     -5,   0,   0,   0,   0,   0,   0,  -5,
+                     -5,   0,   0,   0,   0,   0,   0,  -5,
+                      0,   0,   0,   5,   5,   0,   0,   0
+            },
+            {
+                    -20, -10, -10,  -5,  -5, -10, -10, -20,
+                    -10,   0,   0,   0,   0,   0,   0, -10,
+                    -10,   0,   5,   5,   5,   5,   0, -10,
+                     -5,   0,   5,   5,   5,   5,   0,  -5,
+                      0,   0,   5,   5,   5,   5,   0,  -5,
+                    -10,   5,   5,   5,   5,   5,   0, -10,
+                    -10,   0,   5,   0,   0,   0,   0, -10,
+                    -20, -10, -10,  -5,  -5, -10, -10, -20
+            },
+            {
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -20, -30, -30, -40, -40, -30, -30, -20,
+                    -10, -20, -20, -20, -20, -20, -20, -10,
+                     20,  20,   0,   0,   0,   0,  20,  20,
+                     20,  30,  10,   0,   0,  10,  30,  20
+            }
+    };
+
+    private final int[] params;
+    private final PawnCache pawnCache = new PawnCache(16);
+
+    /**
+     * Creates an evaluator with the default weights.
+     */
+    Evaluator() {
+        this.params = new int[PARAMS];
+        for (int type = IPiece.PAWN; type <= IPiece.KING; type++) {
+            this.params[type] = MATERIAL[type];
+            for (int x = 0; x < 8; x++) {
+                for (int y = 0; y < 8; y++) {
+                    this.params[tableIndex(type, x * 8 + y)] = TABLES[type][(7 - y) * 8 + x];
+                }
+            }
+        }
+        System.arraycopy(PAWN_WEIGHTS, 0, this.params, PAWN_TERMS, PawnStructure.TERMS);
+    }
+
+    /**
+     * Creates an evaluator with the given weights, laid out as described above.
+     */
+    Evaluator(int[] params) {
+        if (params.length != PARAMS) {
+            throw new IllegalArgumentException("Expected " + PARAMS + " parameters, got " + params.length);
+        }
+        this.params = params.clone();
+    }
+
+    /**
+     * Scores the position from the point of view of the player to move.
+     */
+    int evaluate(ChessBoard board) {
+        int score = 0;
+        long whitePawns = 0;
+        long blackPawns = 0;
+        int whiteKing = -1;
+        int blackKing = -1;
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                IPiece p = board.pieceAt(x, y);
+                if (p == null) {
+                    continue;
+                }
+                score += this.value(p.getType(), p.getIsBlack(), x * 8 + y);
+                if (p.getType() == IPiece.PAWN && p.getIsBlack()) {
+                    blackPawns |= 1L << (x * 8 + y);
+                } else if (p.getType() == IPiece.PAWN) {
+                    whitePawns |= 1L << (x * 8 + y);
+                } else if (p.getType() == IPiece.KING && p.getIsBlack()) {
+                    blackKing = x * 8 + y;
+                } else if (p.getType() == IPiece.KING) {
+                    whiteKing = x * 8 + y;
+                }
+            }
+        }
+        int pawnScore = this.pawnCache.probe(board.getPawnHash());
+        if (pawnScore == Integer.MIN_VALUE) {
+            pawnScore = this.pawnScore(whitePawns, blackPawns, new int[PawnStructure.TERMS]);
+            this.pawnCache.store(board.getPawnHash(), pawnScore);
+        }
+        score += pawnScore + this.params[PAWN_TERMS + PawnStructure.SHIELD]
+                * PawnStructure.shield(whitePawns, blackPawns, whiteKing, blackKing);
+        return board.isWhiteTurn() ? score : -score;
+    }
+
+    /**
+     * Scores the pawn structure from white's point of view, without the king shield.
+     * @param terms - scratch array of PawnStructure.TERMS ints, left holding the counted terms
+     */
+    int pawnScore(long whitePawns, long blackPawns, int[] terms) {
+        PawnStructure.countStructure(whitePawns, blackPawns, terms);
+        int score = 0;
+        for (int i = 0; i < PawnStructure.TERMS; i++) {
+            score += this.params[PAWN_TERMS + i] * terms[i];
+        }
+        return score;
+    }
+
+    /**
+     * @return share of pawn structure scores found in the cache
+     */
+    double getPawnHitRate() {
+        return this.pawnCache.getHitRate();
+    }
+
+    /**
+     * @return material value of the piece type
+     */
+    int materialValue(int type) {
+        return this.params[type];
+    }
+
+    /**
+     * Value of a single piece, positive for white and negative for black.
+     * @param square - x * 8 + y
+     */
+    int value(int type, boolean isBlack, int square) {
+        int weight = this.params[type] + this.params[tableIndex(type, isBlack ? square ^ 7 : square)];
+        return isBlack ? -weight : weight;
+    }
+
+    /**
+     * @return a copy of the weights
+     */
+    int[] getParams() {
+        return this.params.clone();
+    }
+
+    /**
+     * Index of the piece-square entry for a piece type on a square seen from its own side.
+     */
+    static int tableIndex(int type, int square) {
+        return 6 + type * 64 + square;
+    }
+
+    static Evaluator load(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+            int magic = data.readInt();
+            if (magic != MAGIC && magic != MAGIC_V1) {
+                throw new IOException(path + " is not a parameter file");
+            }
+            int count = data.readInt();
+            int expected = magic == MAGIC ? PARAMS : PAWN_TERMS;
+            if (count != expected) {
+                throw new IOException(path + " holds " + count + " parameters, expected " + expected);
+            }
+            int[] params = new int[PARAMS];
+            for (int i = 0; i < count; i++) {
+                params[i] = data.readInt();
+            }
+            if (magic == MAGIC_V1) {
+                System.arraycopy(PAWN_WEIGHTS, 0, params, PAWN_TERMS, PawnStructure.TERMS);
+            }
+            return new Evaluator(params);
+        }
+    }
+
+    void save(Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            data.writeInt(MAGIC);
+            data.writeInt(this.params.length);
+            for (int param : this.params) {
+                data.writeInt(param);
+            }
+            data.flush();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(this.params);
+    }
+}
@@ -0,0 +1,345 @@
+import common.Moves;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only journal of live games, written to memory-mapped segment files. Every record is 8 bytes:
+ *
+ *  [type:1][gameId:4][move:2][check:1]
+ *
+ * where move is packed by Moves.pack and check guards against torn writes. Segments are
+ * preallocated, so a zero type byte marks the end of the written data. Once a segment is full the next one is
+ * started. The mapped pages are forced to disk every syncEvery records, and on sync() and close().
+ *
+ * Whenever a new segment is started, the games still live are written to a checkpoint file in the same record
+ * format, and the segments and checkpoints before it are deleted, so the journal holds little more than the live
+ * games however many have been played. The checkpoint is written to a temporary file and renamed into place, so a
+ * crash leaves either the old files or the new checkpoint.
+ *
+ * After a restart, replay() rebuilds every game that was started and not ended by playing its moves again, starting
+ * from the latest checkpoint. A game whose records do not replay is left out and reported on standard error, rather
+ * than failing the whole replay.
+ */
+public class GameJournal implements Closeable {
+    static final int RECORD_BYTES = 8;
+    private static final byte NEW_GAME = 1;
+    private static final byte MOVE = 2;
+    private static final byte END_GAME = 3;
+    private static final String PREFIX = "journal-";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int syncEvery;
+    // moves of every live game, in the order the games started, for writing checkpoints
+    private final Map<Integer, GameMoves> live;
+    private Map<Integer, ChessBoard> restored;
+    private int segmentIndex;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int unsynced;
+
+    /**
+     * Opens the journal in the given directory, continuing after the last record already written. The games found
+     * there are replayed and can be taken with takeRestoredGames().
+     * @param directory - directory holding the segment files, created if missing
+     * @param segmentBytes - size of each segment file, a multiple of 8
+     * @param syncEvery - number of records between forced writes to disk
+     * @throws IOException if the segments cannot be opened
+     */
+    GameJournal(Path directory, int segmentBytes, int syncEvery) throws IOException {
+        if (segmentBytes < RECORD_BYTES || segmentBytes % RECORD_BYTES != 0) {
+            throw new IllegalArgumentException("Segment size must be a positive multiple of " + RECORD_BYTES);
+        } else if (syncEvery < 1) {
+            throw new IllegalArgumentException("syncEvery must be positive");
+        }
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.syncEvery = syncEvery;
+        this.live = new LinkedHashMap<>();
+        this.restored = load(directory, this.live);
+        // a checkpoint may be newer than every segment, and load() skips the segments before it
+        this.segmentIndex = Math.max(lastIndex(directory, PREFIX), lastIndex(directory, CHECKPOINT_PREFIX));
+        this.openSegment();
+        while (this.segment.hasRemaining() && readRecord(this.segment, this.segment.position()) != null) {
+            this.segment.position(this.segment.position() + RECORD_BYTES);
+        }
+    }
+
+    /**
+     * Opens the journal with 64MB segments, forcing to disk every 256 records.
+     */
+    GameJournal(Path directory) throws IOException {
+        this(directory, 64 << 20, 256);
+    }
+
+    synchronized void newGame(int gameId) throws IOException {
+        this.append(NEW_GAME, gameId, 0);
+        this.live.put(gameId, new GameMoves());
+    }
+
+    synchronized void move(int gameId, int fromX, int fromY, int toX, int toY) throws IOException {
+        int move = Moves.pack(fromX, fromY, toX, toY);
+        this.append(MOVE, gameId, move);
+        GameMoves moves = this.live.get(gameId);
+        if (moves != null) {
+            moves.add(move);
+        }
+    }
+
+    synchronized void endGame(int gameId) throws IOException {
+        this.append(END_GAME, gameId, 0);
+        this.live.remove(gameId);
+    }
+
+    /**
+     * Hands over the games replayed when the journal was opened. Later calls return an empty map.
+     * @return the live games by id
+     */
+    synchronized Map<Integer, ChessBoard> takeRestoredGames() {
+        Map<Integer, ChessBoard> games = this.restored;
+        this.restored = new HashMap<>();
+        return games;
+    }
+
+    /**
+     * Forces every record written so far to disk.
+     */
+    synchronized void sync() {
+        this.segment.force();
+        this.unsynced = 0;
+    }
+
+    public synchronized void close() throws IOException {
+        this.sync();
+        this.channel.close();
+    }
+
+    /**
+     * Rebuilds the games that were started and not ended, from the latest checkpoint and the segments after it.
+     * @param directory - directory holding the segment files
+     * @return the live games by id
+     * @throws IOException if a segment cannot be read
+     */
+    static Map<Integer, ChessBoard> replay(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new HashMap<>();
+        }
+        return load(directory, new LinkedHashMap<Integer, GameMoves>());
+    }
+
+    /**
+     * Reads the latest checkpoint and the segments after it, filling in the moves of the live games.
+     * @return the live games replayed on boards, without those whose records do not replay
+     */
+    private static Map<Integer, ChessBoard> load(Path directory, Map<Integer, GameMoves> live) throws IOException {
+        List<Path> checkpoints = files(directory, CHECKPOINT_PREFIX);
+        int firstSegment = 0;
+        if (!checkpoints.isEmpty()) {
+            Path checkpoint = checkpoints.get(checkpoints.size() - 1);
+            firstSegment = fileIndex(checkpoint, CHECKPOINT_PREFIX);
+            readRecords(checkpoint, live);
+        }
+        for (Path path : files(directory, PREFIX)) {
+            if (fileIndex(path, PREFIX) >= firstSegment) {
+                readRecords(path, live);
+            }
+        }
+
+        Map<Integer, ChessBoard> games = new HashMap<>();
+        Iterator<Map.Entry<Integer, GameMoves>> entries = live.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Integer, GameMoves> entry = entries.next();
+            GameMoves moves = entry.getValue();
+            ChessBoard board = new ChessBoard(false);
+            try {
+                for (int i = 0; i < moves.count; i++) {
+                    int move = moves.moves[i];
+                    board.playGame(Moves.fromX(move), Moves.fromY(move), Moves.toX(move), Moves.toY(move));
+                }
+                games.put(entry.getKey(), board);
+            } catch (RuntimeException e) {
+                System.err.println("Journal: skipping game " + entry.getKey() + ", its moves do not replay: " + e);
+                entries.remove();
+            }
+        }
+        return games;
+    }
+
+    private static void readRecords(Path path, Map<Integer, GameMoves> live) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (int pos = 0; pos + RECORD_BYTES <= buffer.limit(); pos += RECORD_BYTES) {
+                long[] record = readRecord(buffer, pos);
+                if (record == null) {
+                    break;
+                }
+                int gameId = (int) record[1];
+                if (record[0] == NEW_GAME) {
+                    live.put(gameId, new GameMoves());
+                } else if (record[0] == END_GAME) {
+                    live.remove(gameId);
+                } else if (live.containsKey(gameId)) {
+                    live.get(gameId).add((int) record[2]);
+                } else {
+                    System.err.println("Journal: skipping a move of unknown game " + gameId + " in " + path);
+                }
+            }
+        }
+    }
+
+    private void append(byte type, int gameId, int move) throws IOException {
+        if (!this.segment.hasRemaining()) {
+            this.segment.force();
+            this.channel.close();
+            this.segmentIndex++;
+            // the segment exists before the older ones are deleted, so a restart continues from it
+            this.openSegment();
+            this.writeCheckpoint();
+        }
+        byte check = checksum(type, gameId, move);
+        this.segment.put(type).putInt(gameId).putShort((short) move).put(check);
+        if (++this.unsynced >= this.syncEvery) {
+            this.sync();
+        }
+    }
+
+    /**
+     * Writes the live games as the checkpoint replayed before the current segment, then deletes the files it
+     * replaces.
+     */
+    private void writeCheckpoint() throws IOException {
+        Path temporary = this.directory.resolve(CHECKPOINT_PREFIX + "next.tmp");
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream stream = Channels.newOutputStream(file);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            for (Map.Entry<Integer, GameMoves> entry : this.live.entrySet()) {
+                int gameId = entry.getKey();
+                writeRecord(out, NEW_GAME, gameId, 0);
+                GameMoves moves = entry.getValue();
+                for (int i = 0; i < moves.count; i++) {
+                    writeRecord(out, MOVE, gameId, moves.moves[i]);
+                }
+            }
+            out.flush();
+            file.force(true);
+        }
+        Files.move(temporary, this.directory.resolve(fileName(CHECKPOINT_PREFIX, this.segmentIndex)),
+                StandardCopyOption.ATOMIC_MOVE);
+        for (String prefix : new String[]{PREFIX, CHECKPOINT_PREFIX}) {
+            for (Path path : files(this.directory, prefix)) {
+                if (fileIndex(path, prefix) < this.segmentIndex) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte type, int gameId, int move) throws IOException {
+        out.writeByte(type);
+        out.writeInt(gameId);
+        out.writeShort(move);
+        out.writeByte(checksum(type, gameId, move));
+    }
+
+    private void openSegment() throws IOException {
+        Path path = this.directory.resolve(fileName(PREFIX, this.segmentIndex));
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.segment = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentBytes);
+        this.unsynced = 0;
+    }
+
+    /**
+     * Reads the record at the given offset.
+     * @return {type, gameId, move}, or null if no complete record is there
+     */
+    private static long[] readRecord(ByteBuffer buffer, int pos) {
+        byte type = buffer.get(pos);
+        if (type != NEW_GAME && type != MOVE && type != END_GAME) {
+            return null;
+        }
+        int gameId = buffer.getInt(pos + 1);
+        int move = buffer.getShort(pos + 5) & 0xFFFF;
+        if (buffer.get(pos + 7) != checksum(type, gameId, move)) {
+            return null;
+        }
+        return new long[]{type, gameId, move};
+    }
+
+    private static byte checksum(byte type, int gameId, int move) {
+        int h = type * 31 + gameId;
+        h = h * 31 + move;
+        h ^= h >>> 16;
+        return (byte) (h ^ h >>> 8 ^ 0x5A);
+    }
+
+    private static String fileName(String prefix, int index) {
+        return String.format("%s%06d%s", prefix, index, SUFFIX);
+    }
+
+    private static int fileIndex(Path path, String prefix) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(prefix.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * @return the highest index among the files of one kind, or 0 if there are none
+     */
+    private static int lastIndex(Path directory, String prefix) throws IOException {
+        List<Path> paths = files(directory, prefix);
+        return paths.isEmpty() ? 0 : fileIndex(paths.get(paths.size() - 1), prefix);
+    }
+
+    /**
+     * @return the files of one kind, in index order
+     */
+    private static List<Path> files(Path directory, String prefix) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "[0-9]*" + SUFFIX)) {
+            for (Path p : stream) {
+                paths.add(p);
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    /**
+     * Growable list of the packed moves of one game.
+     */
+    private static class GameMoves {
+        private int[] moves = new int[16];
+        private int count;
+
+        private void add(int move) {
+            if (this.count == this.moves.length) {
+                this.moves = Arrays.copyOf(this.moves, this.count * 2);
+            }
+            this.moves[this.count++] = move;
+        }
+    }
+}
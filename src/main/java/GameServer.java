@@ -0,0 +1,458 @@
+import common.Moves;
+import metrics.Metrics;
+import piece.IPiece;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hosts many games behind a single non-blocking selector thread. Clients speak a line protocol, one request per
+ * line, and receive one reply line per request:
+ *
+ *  NEW [WHITE|BLACK]            -> OK <gameId>          (without a color the creator takes both seats)
+ *  JOIN <gameId>                -> OK <WHITE|BLACK>     (takes a free seat, white first)
+ *  MOVE <gameId> fx fy tx ty    -> OK <status>          (move validated through ChessBoard.playGame)
+ *  STATUS <gameId>              -> OK <WHITE|BLACK> <status>
+ *  BOARD <gameId>               -> OK <64 chars, '.' for empty, upper case white, lower case black>
+ *  MOVES <gameId>               -> OK <legal moves in the four digit form of common.Moves, space separated>
+ *  END <gameId>                 -> OK
+ *
+ * Any failure is answered with ERR <message>. Each seat of a game belongs to the connection that created or joined
+ * it: only a seated connection may use the game, and only the one holding the side to move may play. The two bots of
+ * a game may use one connection or two. When a connection closes its seats are freed, and a game left with no seat
+ * taken is ended once it has stayed so for ABANDON_MILLIS, leaving time to reconnect and JOIN again. A client that
+ * stops reading its replies is disconnected once MAX_PENDING bytes are waiting for it. Only the selector thread
+ * touches the games, so they need no locking.
+ *
+ * With a journal directory, every started game, accepted move and ended game is appended to a GameJournal, and the
+ * live games found there are restored when the server starts.
+ */
+public class GameServer implements Runnable {
+    private static final int MAX_LINE = 256;
+    private static final int MAX_PENDING = 64 << 10;
+    private static final int MOVE_CACHE_SIZE = 4096;
+    static final long ABANDON_MILLIS = 60_000;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Map<Integer, Game> games;
+    private final GameJournal journal;
+    private final MoveCache moveCache = new MoveCache(MOVE_CACHE_SIZE, Metrics.LEGAL_MOVES);
+    private int nextGameId;
+    private volatile boolean running;
+
+    /**
+     * Opens the server socket. Use port 0 to pick a free port.
+     * @param port - port to listen on
+     * @throws IOException if the socket cannot be bound
+     */
+    GameServer(int port) throws IOException {
+        this(port, null);
+    }
+
+    /**
+     * Opens the server socket and restores the games kept in the journal.
+     * @param port - port to listen on, 0 to pick a free port
+     * @param journalDirectory - directory of the game journal, or null to run without one
+     * @throws IOException if the socket cannot be bound or the journal cannot be read
+     */
+    GameServer(int port, Path journalDirectory) throws IOException {
+        this.games = new HashMap<>();
+        this.nextGameId = 1;
+        if (journalDirectory != null) {
+            this.journal = new GameJournal(journalDirectory);
+            long now = System.currentTimeMillis();
+            for (Map.Entry<Integer, ChessBoard> restored : this.journal.takeRestoredGames().entrySet()) {
+                // restored games wait for their players to JOIN again
+                this.games.put(restored.getKey(), new Game(restored.getValue(), null, null, now));
+            }
+            for (int id : this.games.keySet()) {
+                this.nextGameId = Math.max(this.nextGameId, id + 1);
+            }
+        } else {
+            this.journal = null;
+        }
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port));
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+        this.running = true;
+    }
+
+    /**
+     * @return the port the server is listening on
+     */
+    int getPort() {
+        return this.serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops the selector loop and closes all connections.
+     */
+    void close() {
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+    /**
+     * Selector loop. Returns once close() is called.
+     */
+    public void run() {
+        try {
+            long nextSweep = System.currentTimeMillis() + ABANDON_MILLIS / 4;
+            while (this.running) {
+                this.selector.select(ABANDON_MILLIS / 4);
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            this.accept();
+                        } else {
+                            if (key.isReadable()) {
+                                this.read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                this.write(key);
+                            }
+                        }
+                    } catch (IOException e) {
+                        this.disconnect(key);
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (now >= nextSweep) {
+                    this.endAbandonedGames(now);
+                    nextSweep = now + ABANDON_MILLIS / 4;
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Game server failed", e);
+        } finally {
+            this.shutdown();
+        }
+    }
+
+    /*
+        ################################
+            PROTOCOL
+        ################################
+     */
+
+    /**
+     * Handles a single request line and returns the reply line, without its line terminator.
+     * @param client - the connection the request came from; any object identifying it will do
+     * @param line - request, without its line terminator
+     * @return reply to send back
+     */
+    String handle(Object client, String line) {
+        String[] parts = line.trim().split("\\s+");
+        try {
+            switch (parts[0].toUpperCase()) {
+                case "NEW":
+                    if (parts.length > 2) {
+                        throw new IllegalArgumentException("Expected at most 1 argument");
+                    }
+                    String color = parts.length == 2 ? parts[1].toUpperCase() : "BOTH";
+                    if (!color.equals("BOTH") && !color.equals("WHITE") && !color.equals("BLACK")) {
+                        throw new IllegalArgumentException("Unknown color");
+                    }
+                    int id = this.nextGameId++;
+                    this.games.put(id, new Game(new ChessBoard(false), color.equals("BLACK") ? null : client,
+                            color.equals("WHITE") ? null : client, 0));
+                    if (this.journal != null) {
+                        this.journal.newGame(id);
+                    }
+                    return "OK " + id;
+                case "JOIN":
+                    expectArgs(parts, 2);
+                    Game joined = this.game(parts[1]);
+                    if (joined.white == null) {
+                        joined.white = client;
+                    } else if (joined.black == null) {
+                        joined.black = client;
+                    } else {
+                        throw new IllegalArgumentException("Game is full");
+                    }
+                    joined.abandonedSince = 0;
+                    return "OK " + (joined.black == client ? "BLACK" : "WHITE");
+                case "MOVE":
+                    expectArgs(parts, 6);
+                    Game game = this.seatedGame(client, parts[1]);
+                    ChessBoard board = game.board;
+                    if (board.isGameOver()) {
+                        throw new IllegalArgumentException("Game is over");
+                    } else if ((board.isWhiteTurn() ? game.white : game.black) != client) {
+                        throw new IllegalArgumentException("Not your turn");
+                    }
+                    int fromX = Integer.parseInt(parts[2]);
+                    int fromY = Integer.parseInt(parts[3]);
+                    int toX = Integer.parseInt(parts[4]);
+                    int toY = Integer.parseInt(parts[5]);
+                    // journaled before it is played, so a failed write leaves the game as the journal has it
+                    board.validateMove(fromX, fromY, toX, toY);
+                    if (this.journal != null) {
+                        this.journal.move(Integer.parseInt(parts[1]), fromX, fromY, toX, toY);
+                    }
+                    board.playGame(fromX, fromY, toX, toY);
+                    return "OK " + board.getGameStatus();
+                case "STATUS":
+                    expectArgs(parts, 2);
+                    ChessBoard current = this.seatedGame(client, parts[1]).board;
+                    return "OK " + (current.isWhiteTurn() ? "WHITE " : "BLACK ") + current.getGameStatus();
+                case "BOARD":
+                    expectArgs(parts, 2);
+                    return "OK " + encodeBoard(this.seatedGame(client, parts[1]).board);
+                case "MOVES":
+                    expectArgs(parts, 2);
+                    StringBuilder reply = new StringBuilder("OK");
+                    for (int move : this.moveCache.legalMoves(this.seatedGame(client, parts[1]).board)) {
+                        reply.append(' ').append(Moves.toString(move));
+                    }
+                    return reply.toString();
+                case "END":
+                    expectArgs(parts, 2);
+                    this.seatedGame(client, parts[1]);
+                    this.endGame(Integer.parseInt(parts[1]));
+                    return "OK";
+                default:
+                    return "ERR Unknown command";
+            }
+        } catch (IllegalArgumentException e) {
+            return "ERR " + e.getMessage();
+        } catch (IOException e) {
+            return "ERR Journal failed: " + e.getMessage();
+        } catch (RuntimeException e) {
+            // a fault in the board code must not take down the other games
+            return "ERR Internal error: " + e;
+        }
+    }
+
+    /**
+     * @return the number of games currently hosted
+     */
+    int gameCount() {
+        return this.games.size();
+    }
+
+    /**
+     * Frees every seat held by a client, starting the abandon clock of the games it leaves empty.
+     */
+    void release(Object client) {
+        long now = System.currentTimeMillis();
+        for (Game game : this.games.values()) {
+            if (game.white == client || game.black == client) {
+                game.white = game.white == client ? null : game.white;
+                game.black = game.black == client ? null : game.black;
+                if (game.white == null && game.black == null) {
+                    game.abandonedSince = now;
+                }
+            }
+        }
+    }
+
+    /**
+     * Ends the games that have had no seat taken for ABANDON_MILLIS.
+     * @param now - current time in milliseconds
+     */
+    void endAbandonedGames(long now) {
+        List<Integer> abandoned = new ArrayList<>();
+        for (Map.Entry<Integer, Game> entry : this.games.entrySet()) {
+            Game game = entry.getValue();
+            if (game.white == null && game.black == null && now - game.abandonedSince >= ABANDON_MILLIS) {
+                abandoned.add(entry.getKey());
+            }
+        }
+        for (int id : abandoned) {
+            try {
+                this.endGame(id);
+            } catch (IOException e) {
+                // kept in the journal; it is restored and abandoned again after a restart
+            }
+        }
+    }
+
+    private void endGame(int id) throws IOException {
+        this.games.remove(id);
+        if (this.journal != null) {
+            this.journal.endGame(id);
+        }
+    }
+
+    private Game game(String id) {
+        Game game = this.games.get(Integer.parseInt(id));
+        if (game == null) {
+            throw new IllegalArgumentException("No such game");
+        }
+        return game;
+    }
+
+    private Game seatedGame(Object client, String id) {
+        Game game = this.game(id);
+        if (game.white != client && game.black != client) {
+            throw new IllegalArgumentException("Not a player of this game");
+        }
+        return game;
+    }
+
+    private static void expectArgs(String[] parts, int count) {
+        if (parts.length != count) {
+            throw new IllegalArgumentException("Expected " + (count - 1) + " arguments");
+        }
+    }
+
+    private static String encodeBoard(ChessBoard board) {
+        char[] squares = new char[64];
+        for (int i = 0; i < 64; i++) {
+            squares[i] = '.';
+        }
+        for (IPiece[] column : board.getBoard()) {
+            for (IPiece p : column) {
+                if (p != null) {
+                    char c = p.toString().charAt(1);
+                    squares[p.getY() * 8 + p.getX()] = p.getIsBlack() ? Character.toLowerCase(c) : c;
+                }
+            }
+        }
+        return new String(squares);
+    }
+
+    /*
+        ################################
+            NETWORKING
+        ################################
+     */
+
+    private void accept() throws IOException {
+        SocketChannel channel = this.serverChannel.accept();
+        if (channel != null) {
+            channel.configureBlocking(false);
+            channel.register(this.selector, SelectionKey.OP_READ, new Connection());
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        if (channel.read(connection.in) < 0) {
+            this.disconnect(key);
+            return;
+        }
+        connection.in.flip();
+        int start = connection.in.position();
+        for (int i = start; i < connection.in.limit(); i++) {
+            if (connection.in.get(i) == '\n') {
+                byte[] bytes = new byte[i - start];
+                connection.in.get(bytes);
+                connection.in.get();
+                start = i + 1;
+                String reply = this.handle(connection, new String(bytes, StandardCharsets.US_ASCII)) + "\n";
+                if (!connection.queue(reply.getBytes(StandardCharsets.US_ASCII))) {
+                    // the client is not reading its replies
+                    this.disconnect(key);
+                    return;
+                }
+            }
+        }
+        connection.in.compact();
+        if (!connection.in.hasRemaining()) {
+            // a request longer than any valid command
+            this.disconnect(key);
+            return;
+        }
+        if (connection.out.position() > 0) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        connection.out.flip();
+        channel.write(connection.out);
+        connection.out.compact();
+        if (connection.out.position() == 0) {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void disconnect(SelectionKey key) throws IOException {
+        key.cancel();
+        key.channel().close();
+        if (key.attachment() != null) {
+            this.release(key.attachment());
+        }
+    }
+
+    private void shutdown() {
+        try {
+            for (SelectionKey key : this.selector.keys()) {
+                key.channel().close();
+            }
+            this.selector.close();
+            if (this.journal != null) {
+                this.journal.close();
+            }
+        } catch (IOException e) {
+            // nothing left to release
+        }
+    }
+
+    /**
+     * A hosted game and the clients holding its seats, null for a free seat.
+     */
+    private static class Game {
+        private final ChessBoard board;
+        private Object white;
+        private Object black;
+        // when the last seat was freed, while both are free
+        private long abandonedSince;
+
+        private Game(ChessBoard board, Object white, Object black, long abandonedSince) {
+            this.board = board;
+            this.white = white;
+            this.black = black;
+            this.abandonedSince = abandonedSince;
+        }
+    }
+
+    /**
+     * Per-connection buffers. Replies are queued until the socket accepts them.
+     */
+    private static class Connection {
+        private final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+        private ByteBuffer out = ByteBuffer.allocate(MAX_LINE);
+
+        /**
+         * @return false if the reply would take the queue past MAX_PENDING bytes
+         */
+        private boolean queue(byte[] bytes) {
+            if (this.out.remaining() < bytes.length) {
+                int needed = this.out.position() + bytes.length;
+                if (needed > MAX_PENDING) {
+                    return false;
+                }
+                ByteBuffer bigger = ByteBuffer.allocate(Math.min(Math.max(this.out.capacity() * 2, needed), MAX_PENDING));
+                this.out.flip();
+                bigger.put(this.out);
+                this.out = bigger;
+            }
+            this.out.put(bytes);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+// represents the state of a game as reported by ChessBoard.getGameStatus()
+public enum GameStatus {
+    ONGOING,
+    CHECKMATE,
+    STALEMATE,
+    FIFTY_MOVE,
+    REPETITION,
+    INSUFFICIENT_MATERIAL;
+
+    /**
+     * @return true if the game can no longer continue
+     */
+    public boolean isOver() {
+        return this != ONGOING;
+    }
+
+    /**
+     * @return true if the game ended without a winner
+     */
+    public boolean isDraw() {
+        return this != ONGOING && this != CHECKMATE;
+    }
+}
@@ -1,16 +1,109 @@
 import common.Coord;
+import common.Moves;
+import metrics.Metrics;
 import piece.IPiece;
 import piece.Queen;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("server")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : 7777;
+            GameServer server = new GameServer(port, args.length > 2 ? Paths.get(args[2]) : null);
+            System.out.println("Listening on port " + server.getPort());
+            // metrics stay off unless asked for with -Dchess.metrics=true or a dump interval
+            Metrics.registerMBeans();
+            long dumpSeconds = Long.getLong("chess.metrics.dumpSeconds", 0);
+            if (dumpSeconds > 0) {
+                Metrics.setEnabled(true);
+                Metrics.startDump(dumpSeconds, System.out);
+            }
+            server.run();
+            return;
+        }
+        if (args.length > 2 && args[0].equals("book")) {
+            int maxPly = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+            int entries = OpeningBookBuilder.compile(Paths.get(args[1]), Paths.get(args[2]), maxPly);
+            System.out.println("Wrote " + entries + " book entries");
+            return;
+        }
+        if (args.length > 2 && args[0].equals("tablebase")) {
+            TablebaseGenerator generator = new TablebaseGenerator();
+            for (int i = 2; i < args.length; i++) {
+                for (Path path : generator.generate(args[i], Paths.get(args[1]))) {
+                    System.out.println("Wrote " + path);
+                }
+            }
+            return;
+        }
+        if (args.length > 2 && args[0].equals("index")) {
+            PositionIndexWriter writer = new PositionIndexWriter(Paths.get(args[1]));
+            int firstId = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+            int games = writer.addArchive(Paths.get(args[2]), firstId);
+            System.out.println("Indexed " + games + " games");
+            return;
+        }
+        if (args.length > 2 && args[0].equals("selfplay")) {
+            int depth = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+            boolean compress = args.length > 4 && args[4].equals("gzip");
+            SelfPlay selfPlay = new SelfPlay(new Evaluator(), depth, 8, 300, 0.25, System.nanoTime());
+            try (ShardWriter out = new ShardWriter(Paths.get(args[1]), TrainingRecord.BYTES, 1 << 20, compress)) {
+                selfPlay.run(Integer.parseInt(args[2]), Runtime.getRuntime().availableProcessors(), out);
+            }
+            System.out.printf("Wrote %d positions, %.1f positions/s%n", selfPlay.getPositions(),
+                    selfPlay.getPositionsPerSecond());
+            return;
+        }
+        if (args.length > 2 && args[0].equals("tune")) {
+            int epochs = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+            Evaluator start = args.length > 4 ? Evaluator.load(Paths.get(args[4])) : new Evaluator();
+            List<Path> shards = ShardWriter.shards(Paths.get(args[1]));
+            Tuner tuner = new Tuner(start, 1.0, 1.0, 1 << 16, ForkJoinPool.commonPool());
+            System.out.printf("Initial loss %.6f%n", tuner.loss(shards));
+            for (int i = 1; i <= epochs; i++) {
+                long begin = System.nanoTime();
+                double loss = tuner.epoch(shards);
+                System.out.printf("Epoch %d loss %.6f (%.1fs)%n", i, loss, (System.nanoTime() - begin) / 1e9);
+            }
+            tuner.getEvaluator().save(Paths.get(args[2]));
+            System.out.println("Wrote " + args[2]);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("perft")) {
+            int cacheBits = args.length > 2 ? Integer.parseInt(args[2]) : 22;
+            Perft perft = new Perft(ForkJoinPool.commonPool(), cacheBits, 3);
+            ChessBoard board = new ChessBoard(false);
+            for (int depth = 1; depth <= Integer.parseInt(args[1]); depth++) {
+                long begin = System.nanoTime();
+                long nodes = perft.count(board, depth);
+                double seconds = (System.nanoTime() - begin) / 1e9;
+                System.out.printf("perft %d: %d nodes in %.2fs (%.0f nodes/s, %.1f%% cache hits)%n", depth, nodes,
+                        seconds, nodes / seconds, perft.getHitRate() * 100);
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("mcts")) {
+            long millis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+            int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            Mcts mcts = new Mcts(new Evaluator(), threads, 1 << 20, true);
+            int move = mcts.search(new ChessBoard(false), millis * 1000000L);
+            System.out.printf("Best move %s after %d playouts, %.0f playouts/s, %d nodes%n", Moves.toString(move),
+                    mcts.getPlayouts(), mcts.getPlayoutsPerSecond(), mcts.getNodes());
+            return;
+        }
+        if (args.length > 0 && args[0].equals("nnue")) {
+            Network network = args.length > 1 ? Network.load(Paths.get(args[1])) : Network.random(256, 1);
+            long nanos = (args.length > 2 ? Long.parseLong(args[2]) : 5) * 1000000000L;
+            System.out.printf("incremental: %.0f evals/s%n", NnueEvaluator.benchmark(network, nanos, true));
+            System.out.printf("refresh:     %.0f evals/s%n", NnueEvaluator.benchmark(network, nanos, false));
+            return;
+        }
         ChessBoard board = new ChessBoard();
         System.out.println(board);
     }
-    //TODO: figure out castling logic. Only one part missing. Description in Castle Class.
-    //TODO: isInCheck() method in ChessBoard class. if isInCheck, and the move does not remove the player from check it is an invalid move.
-    //TODO: make sure that the play game method ensures that the move will not endanger user king,
-    //TODO: create isGameOver method: () -> boolean
-    //TODO: create possibleMove Method: () -> List<Pair<Coord>>
     //TODO: figure out enpasse logic
 }
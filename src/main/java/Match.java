@@ -0,0 +1,391 @@
+import metrics.ThreadUsage;
+import piece.IPiece;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plays one game between two bots. Each turn runs the bot on a fresh worker thread while the calling thread watches
+ * the thread CPU time and bytes the worker uses, every POLL_MILLIS. The worker belongs to a thread group kept for
+ * the side, and so do the threads the bot starts from it, pools included; what those threads use while the move is
+ * thought about is added to the move. A bot that goes over its budget, returns an illegal move or throws anything at
+ * all, errors included, forfeits the game. The figures of every move are kept in the game record.
+ *
+ * An overrunning move is stopped as soon as the watchdog sees it: the worker is interrupted and, if it does not end
+ * within GRACE_MILLIS, abandoned as a daemon thread at minimum priority so it cannot hold up the match or the JVM.
+ * Java cannot stop a thread that ignores interrupts, so such a bot keeps running in this process. Abandoned threads
+ * are reported on standard error and tracked, and no match starts while any of them is still alive; bots that cannot
+ * be trusted to honour interrupts need a process of their own.
+ */
+public class Match {
+    private static final long POLL_MILLIS = 1;
+    private static final long GRACE_MILLIS = 100;
+    // workers that outlived their grace period, until they end
+    private static final List<Thread> ABANDONED = new ArrayList<>();
+
+    private final Bot white;
+    private final Bot black;
+    private final BotBudget whiteBudget;
+    private final BotBudget blackBudget;
+    private final ChessBoard board;
+    private final List<MoveRecord> record;
+    private final long[] cpuUsed;
+    private final long[] bytesUsed;
+    private final SideThreads[] threads;
+    private GameStatus status;
+    private String forfeit;
+    private Boolean whiteWon;
+
+    Match(Bot white, Bot black, BotBudget whiteBudget, BotBudget blackBudget) {
+        this.white = white;
+        this.black = black;
+        this.whiteBudget = whiteBudget;
+        this.blackBudget = blackBudget;
+        this.board = new ChessBoard();
+        this.record = new ArrayList<>();
+        this.cpuUsed = new long[2];
+        this.bytesUsed = new long[2];
+        this.threads = new SideThreads[]{new SideThreads(white.getName()), new SideThreads(black.getName())};
+        this.status = GameStatus.ONGOING;
+    }
+
+    Match(Bot white, Bot black, BotBudget budget) {
+        this(white, black, budget, budget);
+    }
+
+    /**
+     * Plays until the game is over or a bot forfeits.
+     * @return this match, for reading the result
+     * @throws IllegalStateException if a bot thread abandoned by an earlier match is still running
+     */
+    Match play() {
+        int running = abandonedThreads();
+        if (running > 0) {
+            throw new IllegalStateException(running + " abandoned bot thread(s) still running");
+        }
+        while (this.forfeit == null && !(this.status = this.board.getGameStatus()).isOver()) {
+            this.playTurn();
+        }
+        if (this.status == GameStatus.CHECKMATE) {
+            this.whiteWon = !this.board.isWhiteTurn();
+        }
+        return this;
+    }
+
+    /**
+     * Plays a single move of the side to move.
+     */
+    private void playTurn() {
+        boolean whiteTurn = this.board.isWhiteTurn();
+        Bot bot = whiteTurn ? this.white : this.black;
+        BotBudget budget = whiteTurn ? this.whiteBudget : this.blackBudget;
+        int side = whiteTurn ? 0 : 1;
+
+        long gameCpuLeft = Math.max(0, budget.getGameCpuNanos() - this.cpuUsed[side]);
+        Turn turn = new Turn(bot, this.board.getBoard(), whiteTurn, budget.getMoveCpuNanos(), gameCpuLeft);
+        SideThreads threads = this.threads[side];
+        Thread worker = new Thread(threads.group, turn, "bot-" + bot.getName());
+        worker.setDaemon(true);
+        long[] before = threads.sample(worker);
+        worker.start();
+        String error;
+        try {
+            error = this.watch(worker, turn, budget, side, before);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(worker);
+            this.forfeit = "Match interrupted";
+            return;
+        }
+        if (error == null) {
+            long[] after = threads.sample(worker);
+            turn.add(after[0] - before[0], after[1] - before[1]);
+        }
+        this.cpuUsed[side] += turn.cpu;
+        this.bytesUsed[side] += turn.bytes;
+
+        if (error == null) {
+            error = turn.error;
+        }
+        if (error == null) {
+            error = budget.checkUsage(turn.cpu, turn.bytes, this.cpuUsed[side], this.bytesUsed[side]);
+        }
+        if (error == null) {
+            error = this.tryMove(turn.move);
+        }
+        this.record.add(new MoveRecord(bot.getName(), turn.move, turn.cpu, turn.bytes, error));
+        if (error != null) {
+            this.forfeit = bot.getName() + ": " + error;
+            this.whiteWon = !whiteTurn;
+        }
+    }
+
+    /**
+     * Waits for the worker to finish, checking its usage against the budget while it runs. A worker that goes over
+     * is stopped and the usage seen is left in the turn.
+     * @param before - usage of the side's other threads when the worker started
+     * @return why the bot was stopped, or null if it finished
+     */
+    private String watch(Thread worker, Turn turn, BotBudget budget, int side, long[] before)
+            throws InterruptedException {
+        long id = worker.getId();
+        while (true) {
+            worker.join(POLL_MILLIS);
+            if (!worker.isAlive()) {
+                return null;
+            }
+            long[] others = this.threads[side].sample(worker);
+            long cpu = Math.max(0, ThreadUsage.cpuNanos(id)) + others[0] - before[0];
+            long bytes = Math.max(0, ThreadUsage.allocatedBytes(id)) + others[1] - before[1];
+            String error = budget.checkUsage(cpu, bytes, this.cpuUsed[side] + cpu, this.bytesUsed[side] + bytes);
+            if (error != null && worker.isAlive()) {
+                abandon(worker);
+                turn.stop(cpu, bytes);
+                return error;
+            }
+        }
+    }
+
+    /**
+     * Interrupts a worker and leaves it behind if it does not end within GRACE_MILLIS.
+     */
+    private static void abandon(Thread worker) {
+        worker.interrupt();
+        worker.setPriority(Thread.MIN_PRIORITY);
+        try {
+            worker.join(GRACE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) {
+            System.err.println("Match: " + worker.getName() + " ignored its interrupt and is still running");
+            synchronized (ABANDONED) {
+                ABANDONED.add(worker);
+            }
+        }
+    }
+
+    /**
+     * @return number of abandoned bot threads still running
+     */
+    static int abandonedThreads() {
+        synchronized (ABANDONED) {
+            ABANDONED.removeIf(thread -> !thread.isAlive());
+            return ABANDONED.size();
+        }
+    }
+
+    /**
+     * @return the reason the move was rejected, or null if it was played
+     */
+    private String tryMove(int[] move) {
+        if (move == null || move.length != 4) {
+            return "No move returned";
+        }
+        try {
+            this.board.playGame(move[0], move[1], move[2], move[3]);
+            return null;
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * @return status of the game when play ended. A forfeited game stays ONGOING.
+     */
+    GameStatus getStatus() {
+        return this.status;
+    }
+
+    /**
+     * @return why a bot forfeited, or null if the game was played out
+     */
+    String getForfeit() {
+        return this.forfeit;
+    }
+
+    /**
+     * @return true if white won, false if black won, null for a draw
+     */
+    Boolean getWhiteWon() {
+        return this.whiteWon;
+    }
+
+    /**
+     * @return every move attempted, in order, with its resource figures
+     */
+    List<MoveRecord> getRecord() {
+        return Collections.unmodifiableList(this.record);
+    }
+
+    /**
+     * @return total thread CPU nanoseconds used by a side
+     */
+    long getCpuNanos(boolean white) {
+        return this.cpuUsed[white ? 0 : 1];
+    }
+
+    /**
+     * @return total bytes allocated by a side
+     */
+    long getAllocatedBytes(boolean white) {
+        return this.bytesUsed[white ? 0 : 1];
+    }
+
+    /**
+     * The threads of one side, and the usage last seen for each of them. Threads that end keep the figures they had
+     * when last seen, so a pool shrinking between two samples does not make the usage go down. What a thread used
+     * after the last sample before it ended cannot be read any more and is not counted.
+     */
+    private static class SideThreads {
+        private final ThreadGroup group;
+        private final Map<Long, long[]> seen;
+
+        private SideThreads(String name) {
+            this.group = new ThreadGroup("bot-" + name);
+            this.seen = new HashMap<>();
+        }
+
+        /**
+         * @param exclude - the worker, whose usage is measured on its own
+         * @return thread CPU nanoseconds and bytes allocated by every thread seen so far but the worker
+         */
+        private long[] sample(Thread exclude) {
+            Thread[] live = new Thread[this.group.activeCount() + 4];
+            int count;
+            while ((count = this.group.enumerate(live)) == live.length) {
+                live = new Thread[live.length * 2];
+            }
+            for (int i = 0; i < count; i++) {
+                long id = live[i].getId();
+                long cpu = ThreadUsage.cpuNanos(id);
+                long bytes = ThreadUsage.allocatedBytes(id);
+                // figures read after the thread ended are -1
+                if (live[i] != exclude && cpu >= 0 && bytes >= 0) {
+                    this.seen.put(id, new long[]{cpu, bytes});
+                }
+            }
+            long[] total = new long[2];
+            for (long[] usage : this.seen.values()) {
+                total[0] += usage[0];
+                total[1] += usage[1];
+            }
+            return total;
+        }
+    }
+
+    /**
+     * A bot choosing one move on its worker thread. The worker fills in the move, or the error, and its own usage;
+     * the watchdog takes over the fields with stop() once it gives up on the worker, after which the worker's late
+     * results are ignored.
+     */
+    private static class Turn implements Runnable {
+        private final Bot bot;
+        private final IPiece[][] view;
+        private final boolean whiteTurn;
+        private final long moveCpuNanos;
+        private final long gameCpuNanos;
+        private int[] move;
+        private String error;
+        private long cpu;
+        private long bytes;
+        private boolean stopped;
+
+        private Turn(Bot bot, IPiece[][] view, boolean whiteTurn, long moveCpuNanos, long gameCpuNanos) {
+            this.bot = bot;
+            this.view = view;
+            this.whiteTurn = whiteTurn;
+            this.moveCpuNanos = moveCpuNanos;
+            this.gameCpuNanos = gameCpuNanos;
+        }
+
+        @Override
+        public void run() {
+            int[] chosen = null;
+            String failure = null;
+            try {
+                this.bot.budgetLeft(this.moveCpuNanos, this.gameCpuNanos);
+                chosen = this.bot.chooseMove(this.view, this.whiteTurn);
+            } catch (Throwable t) {
+                failure = "Bot failed: " + t;
+            }
+            // a new thread, so its totals are what the move used
+            long cpuNanos = Math.max(0, ThreadUsage.cpuNanos());
+            long allocated = Math.max(0, ThreadUsage.allocatedBytes());
+            synchronized (this) {
+                if (!this.stopped) {
+                    this.move = chosen;
+                    this.error = failure;
+                    this.cpu = cpuNanos;
+                    this.bytes = allocated;
+                }
+            }
+        }
+
+        /**
+         * Adds what the bot's other threads used to the worker's own figures.
+         */
+        private synchronized void add(long cpuNanos, long allocated) {
+            this.cpu += cpuNanos;
+            this.bytes += allocated;
+        }
+
+        private synchronized void stop(long cpuNanos, long allocated) {
+            this.stopped = true;
+            this.move = null;
+            this.cpu = cpuNanos;
+            this.bytes = allocated;
+        }
+    }
+
+    /**
+     * One entry of the game record.
+     */
+    static class MoveRecord {
+        private final String bot;
+        private final int[] move;
+        private final long cpuNanos;
+        private final long allocatedBytes;
+        private final String rejection;
+
+        MoveRecord(String bot, int[] move, long cpuNanos, long allocatedBytes, String rejection) {
+            this.bot = bot;
+            this.move = move == null ? null : move.clone();
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.rejection = rejection;
+        }
+
+        String getBot() {
+            return this.bot;
+        }
+
+        int[] getMove() {
+            return this.move == null ? null : this.move.clone();
+        }
+
+        long getCpuNanos() {
+            return this.cpuNanos;
+        }
+
+        long getAllocatedBytes() {
+            return this.allocatedBytes;
+        }
+
+        /**
+         * @return why the move was not played, or null if it was
+         */
+        String getRejection() {
+            return this.rejection;
+        }
+
+        public String toString() {
+            return this.bot + " " + Arrays.toString(this.move) + " cpu=" + this.cpuNanos + "ns alloc="
+                    + this.allocatedBytes + "B" + (this.rejection == null ? "" : " " + this.rejection);
+        }
+    }
+}
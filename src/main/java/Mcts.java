@@ -0,0 +1,413 @@
+import common.Moves;
+import piece.IPiece;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monte Carlo tree search over the legal moves of a ChessBoard. Every playout walks down the tree from the root,
+ * choosing at each node the child with the best UCT or PUCT score, expands the leaf it reaches and scores it with a
+ * quiescence search mapped to a win probability. The score is then added to every node on the path.
+ *
+ * Playouts run on several threads over the same tree, from a pool kept between searches. The pool threads are
+ * started by the search that needs them and so join the thread group of the searching thread, where a Match counts
+ * their CPU time and allocation against the bot; a search from another group, such as the next match, replaces the
+ * pool. Idle pool threads end after IDLE_SECONDS.
+ *
+ * Node statistics are atomic counters updated without locks;
+ * a thread counts its visit on the way down, before it knows the result, which is a virtual loss that steers the
+ * other threads to different paths until the result is added on the way back. A node is expanded by the first thread
+ * to claim it; others reaching it meanwhile score it as a leaf.
+ *
+ * Nodes are kept in pooled primitive arrays indexed by node number, with the children of a node in one contiguous
+ * block. When the next search starts from a position two plies below the old root, the subtree under it is copied
+ * to the second pool and becomes the new tree, so the playouts spent on it are kept.
+ */
+public class Mcts {
+    private static final int UNEXPANDED = 0;
+    private static final int EXPANDING = 1;
+    private static final int EXPANDED = 2;
+    // win probabilities are summed in fixed point
+    private static final double ONE = 1 << 16;
+    private static final long IDLE_SECONDS = 30;
+
+    private final Evaluator evaluator;
+    private final int threads;
+    private final boolean puct;
+    private final double exploration;
+    private Pool pool;
+    private Pool spare;
+    private ThreadPoolExecutor workers;
+    private ThreadGroup workersGroup;
+    private ChessBoard rootBoard;
+    private long playouts;
+    private long elapsedNanos;
+
+    /**
+     * @param evaluator - evaluation used to score leaves
+     * @param threads - number of threads running playouts
+     * @param poolNodes - capacity of each of the two node pools
+     * @param puct - use PUCT with move priors rather than plain UCT
+     */
+    Mcts(Evaluator evaluator, int threads, int poolNodes, boolean puct) {
+        if (threads < 1 || poolNodes < 2) {
+            throw new IllegalArgumentException("threads must be positive and poolNodes at least 2");
+        }
+        this.evaluator = evaluator;
+        this.threads = threads;
+        this.puct = puct;
+        this.exploration = puct ? 1.5 : Math.sqrt(2);
+        this.pool = new Pool(poolNodes);
+        this.spare = new Pool(poolNodes);
+    }
+
+    /**
+     * Searches the position until the time is up and returns the most visited move.
+     * @param board - position to search; it is not changed
+     * @param budgetNanos - time to search for
+     * @return the move packed by common.Moves, or 0 if there is no legal move
+     */
+    int search(ChessBoard board, long budgetNanos) throws InterruptedException {
+        return this.search(board, budgetNanos, Long.MAX_VALUE);
+    }
+
+    /**
+     * Searches the position until the time is up or enough playouts have run, and returns the most visited move.
+     * Interrupting the calling thread stops the playouts.
+     * @param board - position to search; it is not changed
+     * @param budgetNanos - time to search for
+     * @param maxPlayouts - playouts after which to stop, give or take one per thread
+     * @return the move packed by common.Moves, or 0 if there is no legal move
+     */
+    int search(ChessBoard board, long budgetNanos, final long maxPlayouts) throws InterruptedException {
+        long start = System.nanoTime();
+        final long deadline = start + budgetNanos;
+        this.reuseOrReset(board);
+        final LongAdder done = new LongAdder();
+        ThreadPoolExecutor workers = this.workers();
+        Future<?>[] running = new Future<?>[this.threads];
+        try {
+            for (int i = 0; i < this.threads; i++) {
+                final ChessBoard own = this.rootBoard.copy();
+                running[i] = workers.submit(() -> {
+                    Searcher searcher = new Searcher(this.evaluator);
+                    int[] path = new int[Searcher.MAX_PLY * 4];
+                    int[] moves = new int[ChessBoard.MAX_MOVES];
+                    do {
+                        this.playout(own, searcher, path, moves);
+                        done.increment();
+                    } while (System.nanoTime() - deadline < 0 && done.sum() < maxPlayouts
+                            && !Thread.currentThread().isInterrupted());
+                });
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Playout failed", e.getCause());
+        } finally {
+            // stops the playouts still running if the search was interrupted or failed
+            for (Future<?> future : running) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        }
+        this.playouts = done.sum();
+        this.elapsedNanos = System.nanoTime() - start;
+        return this.bestMove();
+    }
+
+    private ThreadPoolExecutor workers() {
+        ThreadGroup group = Thread.currentThread().getThreadGroup();
+        if (this.workers != null && this.workersGroup != group) {
+            this.workers.shutdown();
+            this.workers = null;
+        }
+        if (this.workers == null) {
+            this.workersGroup = group;
+            this.workers = new ThreadPoolExecutor(this.threads, this.threads, IDLE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), runnable -> {
+                        Thread thread = new Thread(runnable, "mcts");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            this.workers.allowCoreThreadTimeOut(true);
+        }
+        return this.workers;
+    }
+
+    /**
+     * @return playouts run by the last search
+     */
+    long getPlayouts() {
+        return this.playouts;
+    }
+
+    /**
+     * @return playouts per second of the last search
+     */
+    double getPlayoutsPerSecond() {
+        return this.elapsedNanos == 0 ? 0 : this.playouts * 1e9 / this.elapsedNanos;
+    }
+
+    /**
+     * @return number of visits to the root, including those kept from the previous search
+     */
+    int getRootVisits() {
+        return this.pool.visits.get(0);
+    }
+
+    /**
+     * @return number of nodes in use
+     */
+    int getNodes() {
+        return this.pool.used.get();
+    }
+
+    private int bestMove() {
+        Pool p = this.pool;
+        int best = -1;
+        for (int i = 0; i < p.childCount[0]; i++) {
+            int child = p.firstChild[0] + i;
+            if (best < 0 || p.visits.get(child) > p.visits.get(best)) {
+                best = child;
+            }
+        }
+        return best < 0 ? 0 : p.move[best];
+    }
+
+    /**
+     * Runs one playout from the root, leaving the board as it found it.
+     */
+    private void playout(ChessBoard board, Searcher searcher, int[] path, int[] moves) {
+        Pool p = this.pool;
+        int node = 0;
+        int depth = 0;
+        path[depth++] = node;
+        p.visits.incrementAndGet(node);
+        while (p.state.get(node) == EXPANDED && p.childCount[node] > 0 && depth < path.length) {
+            node = this.select(p, node);
+            board.doMove(p.move[node]);
+            path[depth++] = node;
+            p.visits.incrementAndGet(node);
+        }
+
+        // value for the player to move at the leaf
+        double value;
+        int count = board.legalMoves(moves);
+        if (count == 0) {
+            value = board.isInCheck() ? 0 : 0.5;
+        } else if (board.isDrawByRule()) {
+            value = 0.5;
+        } else {
+            if (p.state.get(node) == UNEXPANDED && p.state.compareAndSet(node, UNEXPANDED, EXPANDING)) {
+                this.expand(p, node, board, moves, count);
+            }
+            value = 1 / (1 + Math.pow(10, -searcher.quiesce(board) / 400.0));
+        }
+
+        // every node is scored for the player who moved into it
+        for (int i = depth - 1; i >= 0; i--) {
+            value = 1 - value;
+            p.values.addAndGet(path[i], (long) (value * ONE));
+            if (i > 0) {
+                board.undoMove();
+            }
+        }
+    }
+
+    private int select(Pool p, int node) {
+        int parentVisits = p.visits.get(node);
+        double parentQ = parentVisits == 0 ? 0.5 : 1 - p.values.get(node) / ONE / parentVisits;
+        double logVisits = Math.log(Math.max(parentVisits, 1));
+        double sqrtVisits = Math.sqrt(parentVisits);
+        int best = -1;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < p.childCount[node]; i++) {
+            int child = p.firstChild[node] + i;
+            int visits = p.visits.get(child);
+            double q = visits == 0 ? parentQ - 0.1 : p.values.get(child) / ONE / visits;
+            double score;
+            if (this.puct) {
+                score = q + this.exploration * p.prior[child] * sqrtVisits / (1 + visits);
+            } else {
+                score = visits == 0 ? Double.MAX_VALUE : q + this.exploration * Math.sqrt(logVisits / visits);
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gives the node a child per legal move, with priors from a softmax over the value of what each move captures.
+     */
+    private void expand(Pool p, int node, ChessBoard board, int[] moves, int count) {
+        int first = p.allocate(count);
+        if (first < 0) {
+            // the pool is full; the node stays a leaf
+            p.state.set(node, UNEXPANDED);
+            return;
+        }
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            IPiece victim = board.pieceAt(Moves.toX(moves[i]), Moves.toY(moves[i]));
+            double weight = Math.exp(victim == null ? 0 : this.evaluator.materialValue(victim.getType()) / 200.0);
+            p.init(first + i, moves[i], (float) weight);
+            sum += weight;
+        }
+        for (int i = 0; i < count; i++) {
+            p.prior[first + i] /= sum;
+        }
+        p.firstChild[node] = first;
+        p.childCount[node] = count;
+        p.state.set(node, EXPANDED);
+    }
+
+    /**
+     * Makes the board the root of the tree, keeping the subtree already searched below it if it is the current
+     * root or one of its grandchildren.
+     */
+    private void reuseOrReset(ChessBoard board) {
+        ChessBoard next = board.copy();
+        int keep = -1;
+        if (this.rootBoard != null) {
+            Pool p = this.pool;
+            long key = next.getPositionKey();
+            if (this.rootBoard.getPositionKey() == key) {
+                keep = 0;
+            }
+            for (int i = 0; keep < 0 && p.state.get(0) == EXPANDED && i < p.childCount[0]; i++) {
+                int child = p.firstChild[0] + i;
+                if (p.state.get(child) != EXPANDED) {
+                    continue;
+                }
+                this.rootBoard.doMove(p.move[child]);
+                for (int j = 0; keep < 0 && j < p.childCount[child]; j++) {
+                    int grandchild = p.firstChild[child] + j;
+                    this.rootBoard.doMove(p.move[grandchild]);
+                    if (this.rootBoard.getPositionKey() == key) {
+                        keep = grandchild;
+                    }
+                    this.rootBoard.undoMove();
+                }
+                this.rootBoard.undoMove();
+            }
+        }
+        this.rootBoard = next;
+        if (keep == 0) {
+            return;
+        }
+        this.spare.clear();
+        if (keep > 0) {
+            this.spare.copySubtree(this.pool, keep);
+        } else {
+            this.spare.allocate(1);
+            this.spare.init(0, 0, 1);
+        }
+        Pool old = this.pool;
+        this.pool = this.spare;
+        this.spare = old;
+    }
+
+    /**
+     * Node storage. Node 0 is the root; the children of a node are childCount nodes starting at firstChild.
+     */
+    private static class Pool {
+        private final int[] move;
+        private final float[] prior;
+        private final int[] firstChild;
+        private final int[] childCount;
+        private final AtomicIntegerArray state;
+        private final AtomicIntegerArray visits;
+        private final AtomicLongArray values;
+        private final AtomicInteger used = new AtomicInteger();
+
+        private Pool(int capacity) {
+            this.move = new int[capacity];
+            this.prior = new float[capacity];
+            this.firstChild = new int[capacity];
+            this.childCount = new int[capacity];
+            this.state = new AtomicIntegerArray(capacity);
+            this.visits = new AtomicIntegerArray(capacity);
+            this.values = new AtomicLongArray(capacity);
+        }
+
+        /**
+         * @return first of count new nodes, or -1 if the pool cannot hold them
+         */
+        private int allocate(int count) {
+            while (true) {
+                int first = this.used.get();
+                if (first + count > this.move.length) {
+                    return -1;
+                }
+                if (this.used.compareAndSet(first, first + count)) {
+                    return first;
+                }
+            }
+        }
+
+        private void init(int node, int move, float prior) {
+            this.move[node] = move;
+            this.prior[node] = prior;
+            this.firstChild[node] = 0;
+            this.childCount[node] = 0;
+            this.state.set(node, UNEXPANDED);
+            this.visits.set(node, 0);
+            this.values.set(node, 0);
+        }
+
+        private void clear() {
+            this.used.set(0);
+        }
+
+        /**
+         * Copies the subtree under a node of another pool into this empty pool, breadth first, so the node becomes
+         * the root.
+         */
+        private void copySubtree(Pool from, int root) {
+            int[] queue = new int[Math.min(from.used.get(), this.move.length)];
+            queue[0] = root;
+            this.allocate(1);
+            this.copyNode(from, root, 0);
+            for (int head = 0, tail = 1; head < tail; head++) {
+                int source = queue[head];
+                int target = head;
+                int count = from.state.get(source) == EXPANDED ? from.childCount[source] : 0;
+                int first = count == 0 ? -1 : this.allocate(count);
+                if (first < 0) {
+                    this.firstChild[target] = 0;
+                    this.childCount[target] = 0;
+                    this.state.set(target, UNEXPANDED);
+                    continue;
+                }
+                this.firstChild[target] = first;
+                this.childCount[target] = count;
+                for (int i = 0; i < count; i++) {
+                    this.copyNode(from, from.firstChild[source] + i, first + i);
+                    queue[tail++] = from.firstChild[source] + i;
+                }
+            }
+            this.move[0] = 0;
+        }
+
+        private void copyNode(Pool from, int source, int target) {
+            this.move[target] = from.move[source];
+            this.prior[target] = from.prior[source];
+            this.state.set(target, from.state.get(source) == EXPANDED ? EXPANDED : UNEXPANDED);
+            this.visits.set(target, from.visits.get(source));
+            this.values.set(target, from.values.get(source));
+        }
+    }
+}
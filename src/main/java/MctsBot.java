@@ -0,0 +1,51 @@
+import common.Moves;
+import piece.IPiece;
+
+/**
+ * Bot playing the moves of a Monte Carlo tree search, keeping its tree from one move to the next. Its thinking time
+ * comes from the budget given by budgetLeft: every playout thread burns CPU for the whole search, so the time is the
+ * CPU allowance divided among the threads, keeping a quarter back for the rest of the move.
+ */
+public class MctsBot implements Bot {
+    // share of the remaining game budget that one move may use
+    private static final int MOVES_TO_GO = 30;
+
+    private final Mcts mcts;
+    private final int threads;
+    private final long maxMoveNanos;
+    private long moveNanos;
+
+    /**
+     * @param threads - number of threads running playouts
+     * @param maxMoveMillis - longest time to think about a move, the time used when the budget is unlimited
+     */
+    MctsBot(int threads, long maxMoveMillis) {
+        this.mcts = new Mcts(new Evaluator(), threads, 1 << 18, true);
+        this.threads = threads;
+        this.maxMoveNanos = maxMoveMillis * 1000000L;
+        this.moveNanos = this.maxMoveNanos;
+    }
+
+    @Override
+    public String getName() {
+        return "mcts";
+    }
+
+    @Override
+    public void budgetLeft(long moveCpuNanos, long gameCpuNanos) {
+        long cpu = Math.min(moveCpuNanos, gameCpuNanos / MOVES_TO_GO);
+        this.moveNanos = Math.min(this.maxMoveNanos, cpu / this.threads / 4 * 3);
+    }
+
+    @Override
+    public int[] chooseMove(IPiece[][] board, boolean isWhite) {
+        int move;
+        try {
+            move = this.mcts.search(new ChessBoard(board, isWhite), this.moveNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while thinking", e);
+        }
+        return new int[]{Moves.fromX(move), Moves.fromY(move), Moves.toX(move), Moves.toY(move)};
+    }
+}
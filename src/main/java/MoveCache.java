@@ -0,0 +1,97 @@
+import metrics.CacheMetrics;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded cache of the legal moves of positions, keyed by ChessBoard.getPositionKey. A key changes whenever the
+ * position does, so entries never go stale and nothing needs invalidating.
+ *
+ * Entries sit in a fixed number of slots found through a concurrent map. Lookups take no lock: a slot's key is read
+ * before and after its moves, and the moves are only used if both reads give the key asked for. Storing takes a lock
+ * and evicts by CLOCK: the hand sweeps the slots, clearing the referenced bit of each one it passes and taking the
+ * first whose bit is already clear, so entries used since the last sweep survive.
+ */
+public class MoveCache {
+    private static final long EMPTY = 0;
+
+    private final ConcurrentHashMap<Long, Integer> slots;
+    private final AtomicLongArray keys;
+    private final AtomicReferenceArray<int[]> moves;
+    // set by lookups without locking; a lost update only makes eviction less exact
+    private final boolean[] referenced;
+    private final CacheMetrics metrics;
+    private int hand;
+    private int used;
+
+    /**
+     * @param capacity - maximum number of positions kept
+     * @param metrics - counters for hits, misses and evictions
+     */
+    MoveCache(int capacity, CacheMetrics metrics) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.slots = new ConcurrentHashMap<>(capacity * 2);
+        this.keys = new AtomicLongArray(capacity);
+        this.moves = new AtomicReferenceArray<>(capacity);
+        this.referenced = new boolean[capacity];
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the legal moves of the player to move, packed by common.Moves. The array is shared with other callers
+     * and must not be modified.
+     */
+    int[] legalMoves(ChessBoard board) {
+        long key = board.getPositionKey();
+        Integer slot = this.slots.get(key);
+        if (slot != null) {
+            long before = this.keys.get(slot);
+            int[] cached = this.moves.get(slot);
+            if (before == key && this.keys.get(slot) == key) {
+                this.referenced[slot] = true;
+                this.metrics.hit();
+                return cached;
+            }
+        }
+        this.metrics.miss();
+        int[] buffer = new int[ChessBoard.MAX_MOVES];
+        int[] found = Arrays.copyOf(buffer, board.legalMoves(buffer));
+        this.store(key, found);
+        return found;
+    }
+
+    /**
+     * @return number of positions cached
+     */
+    synchronized int size() {
+        return this.used;
+    }
+
+    private synchronized void store(long key, int[] found) {
+        if (this.slots.containsKey(key)) {
+            return;
+        }
+        int slot;
+        if (this.used < this.keys.length()) {
+            slot = this.used++;
+        } else {
+            while (this.referenced[this.hand]) {
+                this.referenced[this.hand] = false;
+                this.hand = (this.hand + 1) % this.keys.length();
+            }
+            slot = this.hand;
+            this.hand = (this.hand + 1) % this.keys.length();
+            this.slots.remove(this.keys.get(slot));
+            this.metrics.evict();
+        }
+        this.keys.set(slot, EMPTY);
+        this.moves.set(slot, found);
+        this.keys.set(slot, key);
+        this.referenced[slot] = false;
+        this.slots.put(key, slot);
+    }
+}
@@ -0,0 +1,168 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Weights of an efficiently updatable neural network evaluation, all integers. The input layer has one feature per
+ * (color, piece type, square) seen from each side, INPUTS in all, and feeds an accumulator of size int16 values per
+ * side. The network then runs
+ *
+ *  a = clamp(accumulator of the player to move, 0, 127) ++ clamp(accumulator of the other player, 0, 127)
+ *  h = clamp((hiddenWeights * a + hiddenBias) >> 6, 0, 127)            HIDDEN values
+ *  score = (outputWeights . h + outputBias) >> 4                        centipawns for the player to move
+ *
+ * The accumulators are kept by NnueEvaluator; this class only holds the weights and the dense layers.
+ *
+ * The weight file is big-endian: int MAGIC, int size, then featureWeights, featureBias, hiddenWeights as shorts,
+ * hiddenBias as ints, outputWeights as shorts and outputBias as an int.
+ */
+public class Network {
+    static final int INPUTS = 2 * 6 * 64;
+    static final int HIDDEN = 32;
+    private static final int MAGIC = 0x4E4E5545;
+
+    final int size;
+    // INPUTS rows of size weights
+    final short[] featureWeights;
+    final short[] featureBias;
+    // 2 * size rows of HIDDEN weights, one row per input
+    final short[] hiddenWeights;
+    final int[] hiddenBias;
+    final short[] outputWeights;
+    final int outputBias;
+
+    Network(int size, short[] featureWeights, short[] featureBias, short[] hiddenWeights, int[] hiddenBias,
+            short[] outputWeights, int outputBias) {
+        if (size < 1 || featureWeights.length != INPUTS * size || featureBias.length != size
+                || hiddenWeights.length != HIDDEN * 2 * size || hiddenBias.length != HIDDEN
+                || outputWeights.length != HIDDEN) {
+            throw new IllegalArgumentException("Weights do not match an accumulator of size " + size);
+        }
+        this.size = size;
+        this.featureWeights = featureWeights;
+        this.featureBias = featureBias;
+        this.hiddenWeights = hiddenWeights;
+        this.hiddenBias = hiddenBias;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+    }
+
+    /**
+     * Input feature of a piece seen from one side. The other side's view swaps the colors and mirrors the ranks, so
+     * both sides see their own pieces as white ones moving up the board.
+     * @param square - x * 8 + y
+     */
+    static int feature(int type, boolean isBlack, int square, boolean blackView) {
+        return ((isBlack != blackView ? 6 : 0) + type) * 64 + (blackView ? square ^ 7 : square);
+    }
+
+    /**
+     * Runs the dense layers.
+     * @param us - accumulators holding those of the player to move at usOffset
+     * @param them - accumulators holding those of the other player at themOffset
+     * @param hidden - scratch space of HIDDEN ints
+     * @return score in centipawns for the player to move
+     */
+    int forward(short[] us, int usOffset, short[] them, int themOffset, int[] hidden) {
+        int size = this.size;
+        for (int j = 0; j < HIDDEN; j++) {
+            hidden[j] = this.hiddenBias[j];
+        }
+        // input by input rather than output by output: each step adds a scaled row to all of hidden, with no sum to
+        // reduce, which HotSpot vectorizes; inputs clamped to zero, often many, are skipped
+        for (int i = 0; i < 2 * size; i++) {
+            int input = i < size ? us[usOffset + i] : them[themOffset + i - size];
+            if (input <= 0) {
+                continue;
+            }
+            input = Math.min(input, 127);
+            int row = i * HIDDEN;
+            for (int j = 0; j < HIDDEN; j++) {
+                hidden[j] += input * this.hiddenWeights[row + j];
+            }
+        }
+        int score = this.outputBias;
+        for (int j = 0; j < HIDDEN; j++) {
+            score += clamp(hidden[j] >> 6) * this.outputWeights[j];
+        }
+        return score >> 4;
+    }
+
+    private static int clamp(int value) {
+        return Math.min(Math.max(value, 0), 127);
+    }
+
+    /**
+     * Makes a network with small random weights, for benchmarks and tests.
+     */
+    static Network random(int size, long seed) {
+        Random random = new Random(seed);
+        short[] featureWeights = new short[INPUTS * size];
+        short[] featureBias = new short[size];
+        short[] hiddenWeights = new short[HIDDEN * 2 * size];
+        int[] hiddenBias = new int[HIDDEN];
+        short[] outputWeights = new short[HIDDEN];
+        for (int i = 0; i < featureWeights.length; i++) {
+            featureWeights[i] = (short) (random.nextInt(65) - 32);
+        }
+        for (int i = 0; i < size; i++) {
+            featureBias[i] = (short) random.nextInt(64);
+        }
+        for (int i = 0; i < hiddenWeights.length; i++) {
+            hiddenWeights[i] = (short) (random.nextInt(9) - 4);
+        }
+        for (int i = 0; i < HIDDEN; i++) {
+            outputWeights[i] = (short) (random.nextInt(129) - 64);
+        }
+        return new Network(size, featureWeights, featureBias, hiddenWeights, hiddenBias, outputWeights, 0);
+    }
+
+    static Network load(Path path) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (in.remaining() < 8 || in.getInt() != MAGIC) {
+            throw new IOException(path + " is not a network file");
+        }
+        int size = in.getInt();
+        if (size < 1 || in.remaining() != (INPUTS * size + size + HIDDEN * 2 * size + HIDDEN) * 2 + HIDDEN * 4 + 4) {
+            throw new IOException(path + " has the wrong length for an accumulator of size " + size);
+        }
+        short[] featureWeights = new short[INPUTS * size];
+        short[] featureBias = new short[size];
+        short[] hiddenWeights = new short[HIDDEN * 2 * size];
+        int[] hiddenBias = new int[HIDDEN];
+        short[] outputWeights = new short[HIDDEN];
+        in.asShortBuffer().get(featureWeights).get(featureBias).get(hiddenWeights);
+        in.position(in.position() + (featureWeights.length + featureBias.length + hiddenWeights.length) * 2);
+        in.asIntBuffer().get(hiddenBias);
+        in.position(in.position() + HIDDEN * 4);
+        in.asShortBuffer().get(outputWeights);
+        in.position(in.position() + HIDDEN * 2);
+        return new Network(size, featureWeights, featureBias, hiddenWeights, hiddenBias, outputWeights, in.getInt());
+    }
+
+    void save(Path path) throws IOException {
+        try (OutputStream file = Files.newOutputStream(path)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+            out.writeInt(MAGIC);
+            out.writeInt(this.size);
+            for (short[] shorts : new short[][]{this.featureWeights, this.featureBias, this.hiddenWeights}) {
+                for (short value : shorts) {
+                    out.writeShort(value);
+                }
+            }
+            for (int value : this.hiddenBias) {
+                out.writeInt(value);
+            }
+            for (short value : this.outputWeights) {
+                out.writeShort(value);
+            }
+            out.writeInt(this.outputBias);
+            out.flush();
+        }
+    }
+}
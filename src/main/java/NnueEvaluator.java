@@ -0,0 +1,204 @@
+import common.Moves;
+import piece.IPiece;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Evaluates the positions of one ChessBoard with a Network, keeping the accumulators up to date as moves are played
+ * with doMove and undoMove. Each ply has its own pair of accumulators, white's view followed by black's view: a move
+ * copies the pair, then subtracts the weight rows of the pieces that left their squares and adds those of the pieces
+ * that arrived, so only two to four rows are touched per move. Taking a move back just drops to the pair below.
+ *
+ * The accumulator loops run over plain short arrays without branches, which HotSpot compiles to SIMD instructions
+ * where the CPU has them. The Vector API would make that explicit, but it needs a newer Java than this project
+ * targets.
+ *
+ * Moves played with playGame are not followed one by one: the accumulators of the current ply are recomputed from
+ * the board instead.
+ *
+ * An NnueEvaluator is not thread-safe; give each board its own, or attach it to one board at a time.
+ */
+public class NnueEvaluator implements ChessBoard.MoveObserver {
+    private final Network network;
+    private ChessBoard board;
+    private final int[] hidden = new int[Network.HIDDEN];
+    private short[][] stack = new short[16][];
+    private int ply;
+
+    /**
+     * Creates an evaluator that has to be attached to a board before use.
+     */
+    NnueEvaluator(Network network) {
+        this.network = network;
+        this.stack[0] = new short[2 * network.size];
+    }
+
+    /**
+     * Attaches to the board and computes the accumulators of its current position.
+     */
+    NnueEvaluator(Network network, ChessBoard board) {
+        this(network);
+        this.attach(board);
+    }
+
+    /**
+     * Starts following a board from its current position, replacing any observer it had. Only moves played from
+     * here on can be taken back while attached.
+     */
+    void attach(ChessBoard board) {
+        this.board = board;
+        this.ply = 0;
+        this.refresh();
+        board.setObserver(this);
+    }
+
+    /**
+     * @return score in centipawns for the player to move
+     */
+    int evaluate() {
+        int size = this.network.size;
+        short[] accumulators = this.stack[this.ply];
+        int us = this.board.isWhiteTurn() ? 0 : size;
+        return this.network.forward(accumulators, us, accumulators, size - us, this.hidden);
+    }
+
+    /**
+     * Recomputes the accumulators of the current ply from the board.
+     */
+    void refresh() {
+        short[] accumulators = this.stack[this.ply];
+        int size = this.network.size;
+        System.arraycopy(this.network.featureBias, 0, accumulators, 0, size);
+        System.arraycopy(this.network.featureBias, 0, accumulators, size, size);
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                IPiece p = this.board.pieceAt(x, y);
+                if (p != null) {
+                    this.add(accumulators, p.getType(), p.getIsBlack(), x * 8 + y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops following the board.
+     */
+    void detach() {
+        this.board.setObserver(null);
+    }
+
+    @Override
+    public void beforeMove(int move) {
+        if (this.ply + 1 == this.stack.length) {
+            this.stack = Arrays.copyOf(this.stack, this.stack.length * 2);
+        }
+        short[] from = this.stack[this.ply];
+        short[] to = this.stack[++this.ply];
+        if (to == null) {
+            to = this.stack[this.ply] = new short[from.length];
+        }
+        System.arraycopy(from, 0, to, 0, from.length);
+
+        int fromX = Moves.fromX(move);
+        int fromY = Moves.fromY(move);
+        int toX = Moves.toX(move);
+        int toY = Moves.toY(move);
+        IPiece moved = this.board.pieceAt(fromX, fromY);
+        IPiece captured = this.board.pieceAt(toX, toY);
+        this.subtract(to, moved.getType(), moved.getIsBlack(), fromX * 8 + fromY);
+        this.add(to, moved.getType(), moved.getIsBlack(), toX * 8 + toY);
+        if (captured != null) {
+            this.subtract(to, captured.getType(), captured.getIsBlack(), toX * 8 + toY);
+        }
+        if (moved.getType() == IPiece.KING && Math.abs(toX - fromX) == 2) {
+            int rookX = toX > fromX ? 7 : 0;
+            IPiece rook = this.board.pieceAt(rookX, fromY);
+            if (rook != null && rook.getType() == IPiece.ROOK) {
+                this.subtract(to, IPiece.ROOK, rook.getIsBlack(), rookX * 8 + fromY);
+                this.add(to, IPiece.ROOK, rook.getIsBlack(), (toX > fromX ? 5 : 3) * 8 + fromY);
+            }
+        }
+    }
+
+    @Override
+    public void afterUndo() {
+        this.ply--;
+    }
+
+    @Override
+    public void positionChanged() {
+        this.refresh();
+    }
+
+    private void add(short[] accumulators, int type, boolean isBlack, int square) {
+        int size = this.network.size;
+        short[] weights = this.network.featureWeights;
+        int white = Network.feature(type, isBlack, square, false) * size;
+        int black = Network.feature(type, isBlack, square, true) * size;
+        for (int i = 0; i < size; i++) {
+            accumulators[i] += weights[white + i];
+        }
+        for (int i = 0; i < size; i++) {
+            accumulators[size + i] += weights[black + i];
+        }
+    }
+
+    private void subtract(short[] accumulators, int type, boolean isBlack, int square) {
+        int size = this.network.size;
+        short[] weights = this.network.featureWeights;
+        int white = Network.feature(type, isBlack, square, false) * size;
+        int black = Network.feature(type, isBlack, square, true) * size;
+        for (int i = 0; i < size; i++) {
+            accumulators[i] -= weights[white + i];
+        }
+        for (int i = 0; i < size; i++) {
+            accumulators[size + i] -= weights[black + i];
+        }
+    }
+
+    /**
+     * Measures evaluations per second over a fixed random game, played forward and taken back repeatedly with an
+     * evaluation after every move.
+     * @param incremental - false to also recompute the accumulators from the board before every evaluation, to
+     *                    measure what the incremental updates save
+     * @return evaluations per second
+     */
+    static double benchmark(Network network, long nanos, boolean incremental) {
+        ChessBoard board = new ChessBoard(false);
+        int[] game = new int[80];
+        int[] moves = new int[ChessBoard.MAX_MOVES];
+        Random random = new Random(1);
+        int plies = 0;
+        for (int count; plies < game.length && (count = board.legalMoves(moves)) > 0; plies++) {
+            game[plies] = moves[random.nextInt(count)];
+            board.doMove(game[plies]);
+        }
+        for (int i = 0; i < plies; i++) {
+            board.undoMove();
+        }
+
+        NnueEvaluator evaluator = new NnueEvaluator(network, board);
+        long evaluations = 0;
+        long sink = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < plies; i++) {
+                board.doMove(game[i]);
+                if (!incremental) {
+                    evaluator.refresh();
+                }
+                sink += evaluator.evaluate();
+            }
+            for (int i = 0; i < plies; i++) {
+                board.undoMove();
+            }
+            evaluations += plies;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < nanos);
+        evaluator.detach();
+        // keeps the evaluations from being optimised away
+        return sink == Long.MIN_VALUE ? 0 : evaluations * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,168 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Read-only opening book, memory-mapped and searched in place. Nothing is loaded onto the heap, so opening a book
+ * costs the same whatever its size.
+ *
+ * The file is an 8 byte header (magic, entry count) followed by 12 byte entries (key:8, weight:4) sorted by key.
+ * A key is the position hash with its low 12 bits replaced by the packed move (see common.Moves), so all the moves
+ * of a position are next to each other and a lookup is a single binary search.
+ */
+public class OpeningBook implements Closeable {
+    static final int MAGIC = 0x424F4F4B;
+    static final int HEADER_BYTES = 8;
+    static final int ENTRY_BYTES = 12;
+    static final long MOVE_MASK = 0xFFF;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int size;
+
+    /**
+     * Maps the book file.
+     * @param path - file written by OpeningBookBuilder
+     * @throws IOException if the file cannot be mapped or is not a book
+     */
+    OpeningBook(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.channel.size());
+        if (this.buffer.limit() < HEADER_BYTES || this.buffer.getInt(0) != MAGIC) {
+            this.channel.close();
+            throw new IOException("Not an opening book: " + path);
+        }
+        this.size = this.buffer.getInt(4);
+        if ((long) HEADER_BYTES + (long) this.size * ENTRY_BYTES > this.buffer.limit()) {
+            this.channel.close();
+            throw new IOException("Truncated opening book: " + path);
+        }
+    }
+
+    /**
+     * @return number of (position, move) entries
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Finds the first entry of a position.
+     * @param hash - position hash, as returned by ChessBoard.getPositionHash()
+     * @return index of the first entry, or -1 if the position is not in the book
+     */
+    int find(long hash) {
+        long position = hash & ~MOVE_MASK;
+        int low = 0;
+        int high = this.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(this.keyAt(mid), position) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < this.size && this.isPosition(low, hash) ? low : -1;
+    }
+
+    /**
+     * @return true if the entry at the index belongs to the given position
+     */
+    boolean isPosition(int index, long hash) {
+        return index < this.size && (this.keyAt(index) & ~MOVE_MASK) == (hash & ~MOVE_MASK);
+    }
+
+    /**
+     * @return packed move of the entry at the index
+     */
+    int moveAt(int index) {
+        return (int) (this.keyAt(index) & MOVE_MASK);
+    }
+
+    /**
+     * @return how often the move of the entry at the index was played
+     */
+    int weightAt(int index) {
+        return this.buffer.getInt(HEADER_BYTES + index * ENTRY_BYTES + 8);
+    }
+
+    /**
+     * @param hash - position hash
+     * @return the most played move of the position, or -1 if it is not in the book
+     */
+    int bestMove(long hash) {
+        int best = -1;
+        int bestWeight = 0;
+        for (int i = this.find(hash); i >= 0 && this.isPosition(i, hash); i++) {
+            if (this.weightAt(i) > bestWeight) {
+                best = this.moveAt(i);
+                bestWeight = this.weightAt(i);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Picks a move of the position at random, in proportion to how often each was played.
+     * @param hash - position hash
+     * @param random - source of randomness
+     * @return a packed move, or -1 if the position is not in the book
+     */
+    int pickMove(long hash, Random random) {
+        int first = this.find(hash);
+        if (first < 0) {
+            return -1;
+        }
+        long total = 0;
+        for (int i = first; this.isPosition(i, hash); i++) {
+            total += this.weightAt(i);
+        }
+        long target = (long) (random.nextDouble() * total);
+        for (int i = first; this.isPosition(i, hash); i++) {
+            target -= this.weightAt(i);
+            if (target < 0) {
+                return this.moveAt(i);
+            }
+        }
+        return this.moveAt(first);
+    }
+
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    private long keyAt(int index) {
+        return this.buffer.getLong(HEADER_BYTES + index * ENTRY_BYTES);
+    }
+
+    /**
+     * Writes the header and entries of a book to the channel.
+     * @param keys - sorted, distinct keys
+     * @param weights - weight of each key
+     * @param count - number of entries to write
+     */
+    static void write(FileChannel out, long[] keys, int[] weights, int count) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(HEADER_BYTES + 4096 * ENTRY_BYTES);
+        chunk.putInt(MAGIC).putInt(count);
+        for (int i = 0; i < count; i++) {
+            if (chunk.remaining() < ENTRY_BYTES) {
+                chunk.flip();
+                while (chunk.hasRemaining()) {
+                    out.write(chunk);
+                }
+                chunk.clear();
+            }
+            chunk.putLong(keys[i]).putInt(weights[i]);
+        }
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+            out.write(chunk);
+        }
+    }
+}
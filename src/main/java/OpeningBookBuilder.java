@@ -0,0 +1,108 @@
+import common.Moves;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Compiles a collection of games into an OpeningBook file. Every position reached in the first maxPly plies of a game
+ * is recorded together with the move played from it; the weight of an entry is how often that move was played.
+ *
+ * The text format read by compile has one game per line, written as moves in the four digit form of
+ * common.Moves, separated by whitespace. Empty lines and lines starting with '#' are skipped.
+ */
+public class OpeningBookBuilder {
+    private final int maxPly;
+    private long[] keys;
+    private int count;
+
+    /**
+     * @param maxPly - number of plies of each game to record
+     */
+    OpeningBookBuilder(int maxPly) {
+        if (maxPly < 1) {
+            throw new IllegalArgumentException("maxPly must be positive");
+        }
+        this.maxPly = maxPly;
+        this.keys = new long[1024];
+    }
+
+    /**
+     * Records the opening of a game. The game stops being recorded at its first invalid move.
+     * @param moves - packed moves, in order
+     */
+    void addGame(int[] moves) {
+        ChessBoard board = new ChessBoard(false);
+        for (int ply = 0; ply < moves.length && ply < this.maxPly; ply++) {
+            int move = moves[ply];
+            long hash = board.getPositionHash();
+            try {
+                board.playGame(Moves.fromX(move), Moves.fromY(move), Moves.toX(move), Moves.toY(move));
+            } catch (IllegalArgumentException e) {
+                return;
+            }
+            if (this.count == this.keys.length) {
+                this.keys = Arrays.copyOf(this.keys, this.count * 2);
+            }
+            this.keys[this.count++] = hash & ~OpeningBook.MOVE_MASK | move;
+        }
+    }
+
+    /**
+     * Sorts and merges the recorded entries and writes the book.
+     * @param path - file to write
+     * @return number of entries written
+     */
+    int write(Path path) throws IOException {
+        long[] sorted = Arrays.copyOf(this.keys, this.count);
+        // keys compare unsigned in the book, flipping the sign bit lets the signed sort produce that order
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] ^= Long.MIN_VALUE;
+        }
+        Arrays.sort(sorted);
+        long[] distinct = new long[sorted.length];
+        int[] weights = new int[sorted.length];
+        int entries = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            long key = sorted[i] ^ Long.MIN_VALUE;
+            if (entries > 0 && distinct[entries - 1] == key) {
+                weights[entries - 1]++;
+            } else {
+                distinct[entries] = key;
+                weights[entries++] = 1;
+            }
+        }
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OpeningBook.write(out, distinct, weights, entries);
+        }
+        return entries;
+    }
+
+    /**
+     * Reads a game collection in the text format and writes its book.
+     * @param games - game collection
+     * @param book - book file to write
+     * @param maxPly - number of plies of each game to record
+     * @return number of entries written
+     */
+    static int compile(Path games, Path book, int maxPly) throws IOException {
+        OpeningBookBuilder builder = new OpeningBookBuilder(maxPly);
+        try (BufferedReader in = Files.newBufferedReader(games, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int[] moves = Moves.parseGame(line);
+                if (moves == null) {
+                    continue;
+                }
+                builder.addGame(moves);
+            }
+        }
+        return builder.write(book);
+    }
+}
@@ -0,0 +1,57 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size cache of pawn structure scores, keyed by ChessBoard.getPawnHash. Pawns move rarely compared to the
+ * other pieces, so most positions met during a search find their pawn score here.
+ *
+ * Entries live in two primitive arrays and are replaced whenever another key maps to the same slot. The cache may be
+ * shared by threads without locking: the key is stored xor-ed with the score, so an entry torn by two threads writing
+ * it at once fails the check on probing.
+ */
+public class PawnCache {
+    private final long[] keys;
+    private final long[] scores;
+    private final int mask;
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param bits - log2 of the number of entries, 16 bytes each
+     */
+    PawnCache(int bits) {
+        if (bits < 1 || bits > 30) {
+            throw new IllegalArgumentException("bits must be between 1 and 30");
+        }
+        this.keys = new long[1 << bits];
+        this.scores = new long[1 << bits];
+        this.mask = (1 << bits) - 1;
+    }
+
+    /**
+     * @return the cached score, or Integer.MIN_VALUE if the key is not cached
+     */
+    int probe(long key) {
+        this.probes.increment();
+        int index = (int) key & this.mask;
+        long score = this.scores[index];
+        if ((this.keys[index] ^ score) == key) {
+            this.hits.increment();
+            return (int) score;
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    void store(long key, int score) {
+        int index = (int) key & this.mask;
+        this.scores[index] = score;
+        this.keys[index] = key ^ score;
+    }
+
+    /**
+     * @return share of probes that found their key
+     */
+    double getHitRate() {
+        long probes = this.probes.sum();
+        return probes == 0 ? 0 : (double) this.hits.sum() / probes;
+    }
+}
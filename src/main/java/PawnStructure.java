@@ -0,0 +1,117 @@
+/**
+ * Counts the pawn structure terms of a position given as one bitboard of pawns per side, with bit x * 8 + y set
+ * for a pawn on (x, y), so every file is one byte. The terms are counted for white minus black:
+ *
+ *  PASSED + rank  passed pawns, by rank counted from their own side
+ *  DOUBLED        pawns with another pawn of their side ahead on the same file
+ *  ISOLATED       pawns with no pawn of their side on a neighbouring file
+ *  BACKWARD       pawns with no pawn of their side beside or behind them on a neighbouring file, whose next square
+ *                 is guarded by an enemy pawn
+ *  SHIELD         pawns on the three files around their king, one or two squares in front of it, while the king is
+ *                 on its first two ranks
+ *
+ * All but SHIELD depend on the pawns alone, so countStructure() results can be cached by the pawn hash; shield()
+ * counts the one term that also needs the kings.
+ */
+public final class PawnStructure {
+    static final int PASSED = 0;
+    static final int DOUBLED = 8;
+    static final int ISOLATED = 9;
+    static final int BACKWARD = 10;
+    static final int SHIELD = 11;
+    static final int TERMS = 12;
+
+    private PawnStructure() {
+    }
+
+    /**
+     * @param whiteKing - square x * 8 + y of the white king, or -1 if there is none
+     * @param blackKing - square of the black king, or -1
+     * @param terms - receives the TERMS counts
+     */
+    static void count(long whitePawns, long blackPawns, int whiteKing, int blackKing, int[] terms) {
+        countStructure(whitePawns, blackPawns, terms);
+        terms[SHIELD] = shield(whitePawns, blackPawns, whiteKing, blackKing);
+    }
+
+    /**
+     * Counts every term but SHIELD, which is left at zero.
+     * @param terms - receives the TERMS counts
+     */
+    static void countStructure(long whitePawns, long blackPawns, int[] terms) {
+        for (int i = 0; i < TERMS; i++) {
+            terms[i] = 0;
+        }
+        countSide(whitePawns, blackPawns, false, terms);
+        countSide(blackPawns, whitePawns, true, terms);
+    }
+
+    /**
+     * @param whiteKing - square x * 8 + y of the white king, or -1 if there is none
+     * @param blackKing - square of the black king, or -1
+     * @return the SHIELD term, white minus black
+     */
+    static int shield(long whitePawns, long blackPawns, int whiteKing, int blackKing) {
+        return shieldSide(whitePawns, whiteKing, false) - shieldSide(blackPawns, blackKing, true);
+    }
+
+    private static void countSide(long own, long enemy, boolean isBlack, int[] terms) {
+        int sign = isBlack ? -1 : 1;
+        int forward = isBlack ? -1 : 1;
+        for (long pawns = own; pawns != 0; pawns &= pawns - 1) {
+            int square = Long.numberOfTrailingZeros(pawns);
+            int x = square >> 3;
+            int y = square & 7;
+            long front = ahead(x - 1, y, isBlack) | ahead(x, y, isBlack) | ahead(x + 1, y, isBlack);
+            if ((enemy & front) == 0) {
+                terms[PASSED + (isBlack ? 7 - y : y)] += sign;
+            }
+            if ((own & ahead(x, y, isBlack)) != 0) {
+                terms[DOUBLED] += sign;
+            }
+            if ((own & (file(x - 1) | file(x + 1))) == 0) {
+                terms[ISOLATED] += sign;
+            } else if ((own & ~front & (file(x - 1) | file(x + 1))) == 0
+                    && (isPawn(enemy, x - 1, y + 2 * forward) || isPawn(enemy, x + 1, y + 2 * forward))) {
+                terms[BACKWARD] += sign;
+            }
+        }
+    }
+
+    private static int shieldSide(long own, int king, boolean isBlack) {
+        int kingX = king >> 3;
+        int kingY = king & 7;
+        if (king < 0 || (isBlack ? 7 - kingY : kingY) > 1) {
+            return 0;
+        }
+        int forward = isBlack ? -1 : 1;
+        int shield = 0;
+        for (int x = kingX - 1; x <= kingX + 1; x++) {
+            for (int step = 1; step <= 2; step++) {
+                if (isPawn(own, x, kingY + step * forward)) {
+                    shield++;
+                }
+            }
+        }
+        return shield;
+    }
+
+    /**
+     * @return the squares of file x, or none if x is off the board
+     */
+    private static long file(int x) {
+        return x < 0 || x > 7 ? 0 : 0xFFL << (x * 8);
+    }
+
+    /**
+     * @return the squares of file x in front of rank y, seen from the given side
+     */
+    private static long ahead(int x, int y, boolean isBlack) {
+        long ranks = isBlack ? (1L << y) - 1 : (0xFFL << (y + 1)) & 0xFF;
+        return file(x) & (ranks << (x * 8));
+    }
+
+    private static boolean isPawn(long pawns, int x, int y) {
+        return x >= 0 && x < 8 && y >= 0 && y < 8 && (pawns & 1L << (x * 8 + y)) != 0;
+    }
+}
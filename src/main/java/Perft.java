@@ -0,0 +1,143 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the leaf positions of the legal move tree of a ChessBoard to a given depth, for checking the move generator
+ * and timing it. The tree is split across a fork-join pool: every node deeper than splitDepth plies from the leaves
+ * forks a task per move, each on its own copy of the board, and the rest of the subtree is counted on that copy with
+ * doMove and undoMove.
+ *
+ * Counts of subtrees at least two plies deep are kept in a cache shared by all threads, keyed by
+ * ChessBoard.getPositionKey and depth. The cache is lock-free: an entry is stored as key ^ data next to data, so an
+ * entry torn by two threads writing it at once fails the check on probing instead of returning a wrong count.
+ */
+public class Perft {
+    private static final long DEPTH_KEY = 0x9E3779B97F4A7C15L;
+
+    private final ForkJoinPool pool;
+    private final int splitDepth;
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param pool - pool running the tasks
+     * @param cacheBits - log2 of the number of cache entries, 16 bytes each
+     * @param splitDepth - depth from the leaves below which subtrees are counted by a single thread
+     */
+    Perft(ForkJoinPool pool, int cacheBits, int splitDepth) {
+        if (cacheBits < 1 || cacheBits > 30) {
+            throw new IllegalArgumentException("cacheBits must be between 1 and 30");
+        } else if (splitDepth < 1) {
+            throw new IllegalArgumentException("splitDepth must be positive");
+        }
+        this.pool = pool;
+        this.splitDepth = splitDepth;
+        this.keys = new long[1 << cacheBits];
+        this.data = new long[1 << cacheBits];
+        this.mask = (1 << cacheBits) - 1;
+    }
+
+    /**
+     * Counts the positions reached after depth plies. The board is not changed.
+     */
+    long count(ChessBoard board, int depth) {
+        if (depth < 0 || depth > 63) {
+            throw new IllegalArgumentException("Depth must be between 0 and 63");
+        }
+        return this.pool.invoke(new Subtree(board.copy(), depth));
+    }
+
+    /**
+     * @return share of cache probes that found their entry
+     */
+    double getHitRate() {
+        long probes = this.probes.sum();
+        return probes == 0 ? 0 : (double) this.hits.sum() / probes;
+    }
+
+    private long serial(ChessBoard board, int depth, int[][] moves) {
+        int[] list = moves[depth];
+        if (depth == 0) {
+            return 1;
+        } else if (depth == 1) {
+            return board.legalMoves(list);
+        }
+        long key = board.getPositionKey() ^ DEPTH_KEY * depth;
+        long nodes = this.probe(key, depth);
+        if (nodes >= 0) {
+            return nodes;
+        }
+        nodes = 0;
+        int count = board.legalMoves(list);
+        for (int i = 0; i < count; i++) {
+            board.doMove(list[i]);
+            nodes += this.serial(board, depth - 1, moves);
+            board.undoMove();
+        }
+        this.store(key, depth, nodes);
+        return nodes;
+    }
+
+    /**
+     * @return the cached count, or -1 if there is none
+     */
+    private long probe(long key, int depth) {
+        this.probes.increment();
+        int index = (int) key & this.mask;
+        long entry = this.data[index];
+        if ((this.keys[index] ^ entry) == key && (entry & 63) == depth) {
+            this.hits.increment();
+            return entry >>> 6;
+        }
+        return -1;
+    }
+
+    private void store(long key, int depth, long nodes) {
+        int index = (int) key & this.mask;
+        long entry = nodes << 6 | depth;
+        this.data[index] = entry;
+        this.keys[index] = key ^ entry;
+    }
+
+    @SuppressWarnings("serial")
+    private class Subtree extends RecursiveTask<Long> {
+        private final ChessBoard board;
+        private final int depth;
+
+        private Subtree(ChessBoard board, int depth) {
+            this.board = board;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            if (this.depth <= Perft.this.splitDepth) {
+                return Perft.this.serial(this.board, this.depth, new int[this.depth + 1][ChessBoard.MAX_MOVES]);
+            }
+            long key = this.board.getPositionKey() ^ DEPTH_KEY * this.depth;
+            long nodes = Perft.this.probe(key, this.depth);
+            if (nodes >= 0) {
+                return nodes;
+            }
+            int[] moves = new int[ChessBoard.MAX_MOVES];
+            int count = this.board.legalMoves(moves);
+            Subtree[] children = new Subtree[count];
+            for (int i = 0; i < count; i++) {
+                ChessBoard child = this.board.copy();
+                child.doMove(moves[i]);
+                children[i] = new Subtree(child, this.depth - 1);
+            }
+            invokeAll(children);
+            nodes = 0;
+            for (Subtree child : children) {
+                nodes += child.join();
+            }
+            Perft.this.store(key, this.depth, nodes);
+            return nodes;
+        }
+    }
+}
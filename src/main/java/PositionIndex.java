@@ -0,0 +1,147 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read side of the archive position index: which games reached a given position.
+ *
+ * The index is a directory of segment files, written by PositionIndexWriter. Each segment is an 8 byte header (magic,
+ * entry count) followed by 12 byte entries (position hash:8, game id:4) sorted by hash and then game id. Segments are
+ * memory-mapped, so nothing is loaded onto the heap, and a lookup is one binary search per segment.
+ *
+ * Segments may overlap, for example while a merge is replacing them, so lookups drop duplicate game ids.
+ */
+public class PositionIndex implements Closeable {
+    static final int MAGIC = 0x504F5358;
+    static final int HEADER_BYTES = 8;
+    static final int ENTRY_BYTES = 12;
+    static final String PREFIX = "positions-";
+    static final String SUFFIX = ".idx";
+
+    private final List<FileChannel> channels;
+    private final List<MappedByteBuffer> segments;
+
+    /**
+     * Maps every segment currently in the directory.
+     * @param directory - index directory
+     * @throws IOException if a segment cannot be mapped or is not an index segment
+     */
+    PositionIndex(Path directory) throws IOException {
+        this.channels = new ArrayList<>();
+        this.segments = new ArrayList<>();
+        for (Path path : segmentFiles(directory)) {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.channels.add(channel);
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (segment.limit() < HEADER_BYTES || segment.getInt(0) != MAGIC
+                    || HEADER_BYTES + (long) segment.getInt(4) * ENTRY_BYTES > segment.limit()) {
+                this.close();
+                throw new IOException("Not an index segment: " + path);
+            }
+            this.segments.add(segment);
+        }
+    }
+
+    /**
+     * @return number of entries over all segments
+     */
+    long size() {
+        long size = 0;
+        for (MappedByteBuffer segment : this.segments) {
+            size += segment.getInt(4);
+        }
+        return size;
+    }
+
+    /**
+     * @return number of segment files
+     */
+    int segmentCount() {
+        return this.segments.size();
+    }
+
+    /**
+     * Finds the games that reached a position.
+     * @param hash - position hash, as returned by ChessBoard.getPositionHash()
+     * @return sorted, distinct game ids
+     */
+    int[] lookup(long hash) {
+        int[] ids = new int[16];
+        int count = 0;
+        for (MappedByteBuffer segment : this.segments) {
+            int size = segment.getInt(4);
+            for (int i = lowerBound(segment, size, hash); i < size && hashAt(segment, i) == hash; i++) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+                ids[count++] = gameAt(segment, i);
+            }
+        }
+        Arrays.sort(ids, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || ids[distinct - 1] != ids[i]) {
+                ids[distinct++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, distinct);
+    }
+
+    public void close() throws IOException {
+        for (FileChannel channel : this.channels) {
+            channel.close();
+        }
+    }
+
+    static long hashAt(ByteBuffer segment, int index) {
+        return segment.getLong(HEADER_BYTES + index * ENTRY_BYTES);
+    }
+
+    static int gameAt(ByteBuffer segment, int index) {
+        return segment.getInt(HEADER_BYTES + index * ENTRY_BYTES + 8);
+    }
+
+    /**
+     * @return index of the first entry whose hash is not below the given one
+     */
+    private static int lowerBound(ByteBuffer segment, int size, long hash) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (hashAt(segment, mid) < hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the segment files of an index, oldest first
+     */
+    static List<Path> segmentFiles(Path directory) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return paths;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path p : stream) {
+                paths.add(p);
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+}
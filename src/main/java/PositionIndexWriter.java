@@ -0,0 +1,356 @@
+import common.Moves;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adds games to a PositionIndex. Every position of a game, including the start, is recorded as (hash, game id).
+ *
+ * Entries are buffered in primitive arrays up to a fixed number, then sorted and written as a new segment, so memory
+ * stays bounded however large the archive. Segments are merged by tiers: a segment of up to bufferEntries entries is
+ * in tier 0, one of up to bufferEntries * mergeFactor in tier 1 and so on, and whenever a tier holds mergeFactor
+ * segments they are streamed into one in a single sorted pass. Every entry is therefore rewritten once per tier, a
+ * logarithmic number of times, and lookups stay at a few binary searches per tier. merge() merges everything at once,
+ * for an archive that is complete. Merged output is split into files of at most maxSegmentEntries entries, so no
+ * single mapping grows past the 2GB limit; full files are not merged again.
+ */
+public class PositionIndexWriter {
+    private final Path directory;
+    private final int mergeFactor;
+    private final int maxSegmentEntries;
+    private final long[] hashes;
+    private final int[] games;
+    private int count;
+    private int nextSegment;
+
+    /**
+     * @param directory - index directory, created if missing
+     * @param bufferEntries - entries kept in memory before a segment is written
+     * @param mergeFactor - number of segments of one tier that flush() merges into one
+     * @param maxSegmentEntries - largest number of entries in one merged segment
+     */
+    PositionIndexWriter(Path directory, int bufferEntries, int mergeFactor, int maxSegmentEntries) throws IOException {
+        if (bufferEntries < 1 || maxSegmentEntries < 1) {
+            throw new IllegalArgumentException("Sizes must be positive");
+        } else if (mergeFactor < 2) {
+            throw new IllegalArgumentException("mergeFactor must be at least 2");
+        }
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.mergeFactor = mergeFactor;
+        this.maxSegmentEntries = Math.min(maxSegmentEntries, (Integer.MAX_VALUE - PositionIndex.HEADER_BYTES) / PositionIndex.ENTRY_BYTES);
+        this.hashes = new long[bufferEntries];
+        this.games = new int[bufferEntries];
+        List<Path> existing = PositionIndex.segmentFiles(directory);
+        this.nextSegment = existing.isEmpty() ? 0 : segmentNumber(existing.get(existing.size() - 1)) + 1;
+    }
+
+    /**
+     * Buffers 4M entries, merges 8 segments of a tier at a time and caps merged segments at 128M entries.
+     */
+    PositionIndexWriter(Path directory) throws IOException {
+        this(directory, 4 << 20, 8, 128 << 20);
+    }
+
+    /**
+     * Replays a game and records every position it reached. Replay stops at the first invalid move.
+     * @param gameId - id of the game in the archive
+     * @param moves - packed moves, in order
+     * @return number of plies recorded
+     */
+    int addGame(int gameId, int[] moves) throws IOException {
+        ChessBoard board = new ChessBoard(false);
+        this.add(board.getPositionHash(), gameId);
+        for (int ply = 0; ply < moves.length; ply++) {
+            int move = moves[ply];
+            try {
+                board.playGame(Moves.fromX(move), Moves.fromY(move), Moves.toX(move), Moves.toY(move));
+            } catch (IllegalArgumentException e) {
+                return ply;
+            }
+            this.add(board.getPositionHash(), gameId);
+        }
+        return moves.length;
+    }
+
+    /**
+     * Indexes a game collection in the text format of OpeningBookBuilder. Games are numbered by their order in
+     * the file, starting at firstId.
+     * @return number of games read
+     */
+    int addArchive(Path archive, int firstId) throws IOException {
+        int id = firstId;
+        try (BufferedReader in = Files.newBufferedReader(archive, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int[] moves = Moves.parseGame(line);
+                if (moves == null) {
+                    continue;
+                }
+                this.addGame(id++, moves);
+            }
+        }
+        this.flush();
+        return id - firstId;
+    }
+
+    /**
+     * Writes the buffered entries as a new segment, then merges every tier that has filled up.
+     */
+    void flush() throws IOException {
+        if (this.count > 0) {
+            sort(this.hashes, this.games, 0, this.count - 1);
+            try (FileChannel out = this.openSegment()) {
+                ByteBuffer chunk = startSegment(this.count);
+                long lastHash = 0;
+                int lastGame = -1;
+                int written = 0;
+                for (int i = 0; i < this.count; i++) {
+                    // a position repeated within one game is recorded once
+                    if (written > 0 && this.hashes[i] == lastHash && this.games[i] == lastGame) {
+                        continue;
+                    }
+                    chunk = put(out, chunk, lastHash = this.hashes[i], lastGame = this.games[i]);
+                    written++;
+                }
+                finishSegment(out, chunk, written);
+            }
+            this.count = 0;
+        }
+        this.mergeTiers();
+    }
+
+    /**
+     * Merges every segment into new, non-overlapping segments, then deletes the old ones. Readers opened before the
+     * merge keep working on the files they mapped.
+     */
+    void merge() throws IOException {
+        this.merge(PositionIndex.segmentFiles(this.directory));
+    }
+
+    /**
+     * Merges the segments of the lowest tier holding mergeFactor of them, until no tier does. A merge can fill the
+     * next tier up, so it is checked again.
+     */
+    private void mergeTiers() throws IOException {
+        while (true) {
+            List<List<Path>> tiers = new ArrayList<>();
+            for (Path path : PositionIndex.segmentFiles(this.directory)) {
+                long entries = entryCount(path);
+                if (entries >= this.maxSegmentEntries) {
+                    continue;
+                }
+                int tier = 0;
+                for (long limit = this.hashes.length; entries > limit; limit *= this.mergeFactor) {
+                    tier++;
+                }
+                while (tiers.size() <= tier) {
+                    tiers.add(new ArrayList<Path>());
+                }
+                tiers.get(tier).add(path);
+            }
+            List<Path> full = null;
+            for (List<Path> tier : tiers) {
+                if (tier.size() >= this.mergeFactor) {
+                    full = tier;
+                    break;
+                }
+            }
+            if (full == null) {
+                return;
+            }
+            this.merge(full);
+        }
+    }
+
+    /**
+     * Streams the given segments into new ones in one sorted pass, then deletes them.
+     */
+    private void merge(List<Path> inputs) throws IOException {
+        if (inputs.size() < 2) {
+            return;
+        }
+        List<FileChannel> channels = new ArrayList<>();
+        try {
+            MappedByteBuffer[] segments = new MappedByteBuffer[inputs.size()];
+            int[] positions = new int[inputs.size()];
+            int[] sizes = new int[inputs.size()];
+            for (int s = 0; s < segments.length; s++) {
+                FileChannel channel = FileChannel.open(inputs.get(s), StandardOpenOption.READ);
+                channels.add(channel);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                sizes[s] = segments[s].getInt(4);
+            }
+            FileChannel out = null;
+            ByteBuffer chunk = null;
+            int written = 0;
+            long lastHash = 0;
+            int lastGame = -1;
+            boolean any = false;
+            try {
+                while (true) {
+                    int best = -1;
+                    for (int s = 0; s < segments.length; s++) {
+                        if (positions[s] < sizes[s] && (best < 0
+                                || compare(segments[s], positions[s], segments[best], positions[best]) < 0)) {
+                            best = s;
+                        }
+                    }
+                    if (best < 0) {
+                        break;
+                    }
+                    long hash = PositionIndex.hashAt(segments[best], positions[best]);
+                    int game = PositionIndex.gameAt(segments[best], positions[best]);
+                    positions[best]++;
+                    if (any && hash == lastHash && game == lastGame) {
+                        continue;
+                    }
+                    if (out != null && written == this.maxSegmentEntries) {
+                        finishSegment(out, chunk, written);
+                        out.close();
+                        out = null;
+                    }
+                    if (out == null) {
+                        out = this.openSegment();
+                        chunk = startSegment(0);
+                        written = 0;
+                    }
+                    chunk = put(out, chunk, hash, game);
+                    written++;
+                    lastHash = hash;
+                    lastGame = game;
+                    any = true;
+                }
+                if (out != null) {
+                    finishSegment(out, chunk, written);
+                }
+            } finally {
+                if (out != null) {
+                    out.close();
+                }
+            }
+        } finally {
+            for (FileChannel channel : channels) {
+                channel.close();
+            }
+        }
+        for (Path input : inputs) {
+            Files.delete(input);
+        }
+    }
+
+    private static long entryCount(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, PositionIndex.HEADER_BYTES).getInt(4);
+        }
+    }
+
+    private void add(long hash, int gameId) throws IOException {
+        if (this.count == this.hashes.length) {
+            this.flush();
+        }
+        this.hashes[this.count] = hash;
+        this.games[this.count++] = gameId;
+    }
+
+    private FileChannel openSegment() throws IOException {
+        Path path = this.directory.resolve(String.format("%s%08d%s", PositionIndex.PREFIX, this.nextSegment++,
+                PositionIndex.SUFFIX));
+        return FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private static ByteBuffer startSegment(int count) {
+        ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+        chunk.putInt(PositionIndex.MAGIC).putInt(count);
+        return chunk;
+    }
+
+    private static ByteBuffer put(FileChannel out, ByteBuffer chunk, long hash, int game) throws IOException {
+        if (chunk.remaining() < PositionIndex.ENTRY_BYTES) {
+            drain(out, chunk);
+        }
+        return chunk.putLong(hash).putInt(game);
+    }
+
+    /**
+     * Writes what is left in the chunk and sets the final entry count in the header.
+     */
+    private static void finishSegment(FileChannel out, ByteBuffer chunk, int count) throws IOException {
+        drain(out, chunk);
+        ByteBuffer header = ByteBuffer.allocate(4).putInt(0, count);
+        out.write(header, 4);
+    }
+
+    private static void drain(FileChannel out, ByteBuffer chunk) throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+            out.write(chunk);
+        }
+        chunk.clear();
+    }
+
+    private static int compare(ByteBuffer a, int i, ByteBuffer b, int j) {
+        int c = Long.compare(PositionIndex.hashAt(a, i), PositionIndex.hashAt(b, j));
+        return c != 0 ? c : Integer.compare(PositionIndex.gameAt(a, i), PositionIndex.gameAt(b, j));
+    }
+
+    private static int segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(PositionIndex.PREFIX.length(), name.length() - PositionIndex.SUFFIX.length()));
+    }
+
+    /**
+     * Sorts the range [low, high] of both arrays by hash, then game id.
+     */
+    private static void sort(long[] hashes, int[] games, int low, int high) {
+        while (high - low > 16) {
+            int mid = (low + high) >>> 1;
+            long pivotHash = hashes[mid];
+            int pivotGame = games[mid];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (hashes[i] < pivotHash || (hashes[i] == pivotHash && games[i] < pivotGame)) {
+                    i++;
+                }
+                while (hashes[j] > pivotHash || (hashes[j] == pivotHash && games[j] > pivotGame)) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(hashes, games, i++, j--);
+                }
+            }
+            // recurse into the smaller side to bound the stack
+            if (j - low < high - i) {
+                sort(hashes, games, low, j);
+                low = i;
+            } else {
+                sort(hashes, games, i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && (hashes[j - 1] > hashes[j] || (hashes[j - 1] == hashes[j] && games[j - 1] > games[j])); j--) {
+                swap(hashes, games, j - 1, j);
+            }
+        }
+    }
+
+    private static void swap(long[] hashes, int[] games, int i, int j) {
+        long h = hashes[i];
+        hashes[i] = hashes[j];
+        hashes[j] = h;
+        int g = games[i];
+        games[i] = games[j];
+        games[j] = g;
+    }
+}
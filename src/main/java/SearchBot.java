@@ -0,0 +1,49 @@
+import common.Moves;
+import piece.IPiece;
+
+/**
+ * Bot playing the best move of a fixed depth Searcher, scoring positions with the hand-written Evaluator or with a
+ * Network.
+ */
+public class SearchBot implements Bot {
+    private final Searcher searcher;
+    private final int depth;
+    private final String name;
+
+    /**
+     * @param evaluator - evaluation to search with
+     * @param depth - plies to search before the quiescence search
+     */
+    SearchBot(Evaluator evaluator, int depth) {
+        this(new Searcher(evaluator), depth, "search");
+    }
+
+    /**
+     * @param network - network to score positions with, through an NnueEvaluator
+     * @param depth - plies to search before the quiescence search
+     */
+    SearchBot(Network network, int depth) {
+        this(new Searcher(network), depth, "nnue");
+    }
+
+    private SearchBot(Searcher searcher, int depth, String name) {
+        this.searcher = searcher;
+        this.depth = depth;
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public int[] chooseMove(IPiece[][] board, boolean isWhite) {
+        this.searcher.search(new ChessBoard(board, isWhite), this.depth);
+        int move = this.searcher.getBestMove();
+        if (move == 0) {
+            return null;
+        }
+        return new int[]{Moves.fromX(move), Moves.fromY(move), Moves.toX(move), Moves.toY(move)};
+    }
+}
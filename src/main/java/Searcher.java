@@ -0,0 +1,180 @@
+import common.Moves;
+import piece.IPiece;
+
+/**
+ * Fixed depth negamax alpha-beta search over the legal moves of a ChessBoard, followed by a quiescence search of
+ * captures so that leaves are only scored once the exchanges on the board have settled. Captures are tried first,
+ * most valuable victim by least valuable attacker.
+ *
+ * Leaves are scored by an Evaluator or, when built with a Network, by an NnueEvaluator that is attached to the board
+ * for the length of each search and detached again after it.
+ *
+ * The board is searched in place with doMove and undoMove and is left as it was found. A Searcher keeps its move
+ * buffers between searches, so each thread should use its own.
+ */
+public class Searcher {
+    static final int MATE = 30000;
+    static final int INFINITY = 32000;
+    static final int MAX_PLY = 64;
+
+    private final Evaluator evaluator;
+    private final NnueEvaluator nnue;
+    private final int[][] moves = new int[MAX_PLY + 1][ChessBoard.MAX_MOVES];
+    private final int[][] order = new int[MAX_PLY + 1][ChessBoard.MAX_MOVES];
+    private int bestMove;
+    private long nodes;
+
+    Searcher(Evaluator evaluator) {
+        this.evaluator = evaluator;
+        this.nnue = null;
+    }
+
+    Searcher(Network network) {
+        this.evaluator = null;
+        this.nnue = new NnueEvaluator(network);
+    }
+
+    /**
+     * Searches the position to the given depth.
+     * @param depth - number of plies before the quiescence search, at least 1
+     * @return score from the point of view of the player to move; mates are scored MATE minus the plies to mate
+     */
+    int search(ChessBoard board, int depth) {
+        if (depth < 1 || depth > MAX_PLY) {
+            throw new IllegalArgumentException("Depth must be between 1 and " + MAX_PLY);
+        }
+        this.bestMove = 0;
+        this.attach(board);
+        try {
+            return this.negamax(board, depth, 0, -INFINITY, INFINITY);
+        } finally {
+            this.detach();
+        }
+    }
+
+    /**
+     * Runs only the quiescence search. A position whose score equals its static evaluation is quiet.
+     * @return score from the point of view of the player to move
+     */
+    int quiesce(ChessBoard board) {
+        this.attach(board);
+        try {
+            return this.quiesce(board, 0, -INFINITY, INFINITY);
+        } finally {
+            this.detach();
+        }
+    }
+
+    /**
+     * @return best move found by the last search, packed by common.Moves, or 0 if there was no legal move
+     */
+    int getBestMove() {
+        return this.bestMove;
+    }
+
+    /**
+     * @return number of positions visited since this Searcher was created
+     */
+    long getNodes() {
+        return this.nodes;
+    }
+
+    private void attach(ChessBoard board) {
+        if (this.nnue != null) {
+            this.nnue.attach(board);
+        }
+    }
+
+    private void detach() {
+        if (this.nnue != null) {
+            this.nnue.detach();
+        }
+    }
+
+    private int negamax(ChessBoard board, int depth, int ply, int alpha, int beta) {
+        this.nodes++;
+        if (ply > 0 && board.isDrawByRule()) {
+            return 0;
+        }
+        if (depth == 0 || ply == MAX_PLY) {
+            return this.quiesce(board, ply, alpha, beta);
+        }
+        int[] list = this.moves[ply];
+        int count = board.legalMoves(list);
+        if (count == 0) {
+            return board.isInCheck() ? -MATE + ply : 0;
+        }
+        this.sort(board, list, this.order[ply], count, false);
+        for (int i = 0; i < count; i++) {
+            board.doMove(list[i]);
+            int score = -this.negamax(board, depth - 1, ply + 1, -beta, -alpha);
+            board.undoMove();
+            if (score > alpha) {
+                alpha = score;
+                if (ply == 0) {
+                    this.bestMove = list[i];
+                }
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+        if (ply == 0 && this.bestMove == 0) {
+            this.bestMove = list[0];
+        }
+        return alpha;
+    }
+
+    private int quiesce(ChessBoard board, int ply, int alpha, int beta) {
+        this.nodes++;
+        int standPat = this.nnue != null ? this.nnue.evaluate() : this.evaluator.evaluate(board);
+        if (standPat >= beta || ply == MAX_PLY) {
+            return standPat;
+        }
+        if (standPat > alpha) {
+            alpha = standPat;
+        }
+        int[] list = this.moves[ply];
+        int count = this.sort(board, list, this.order[ply], board.legalMoves(list), true);
+        for (int i = 0; i < count; i++) {
+            board.doMove(list[i]);
+            int score = -this.quiesce(board, ply + 1, -beta, -alpha);
+            board.undoMove();
+            if (score > alpha) {
+                alpha = score;
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+        return alpha;
+    }
+
+    /**
+     * Orders the moves with captures first, most valuable victim by least valuable attacker.
+     * @param capturesOnly - drop the quiet moves
+     * @return number of moves left in the list
+     */
+    private int sort(ChessBoard board, int[] list, int[] keys, int count, boolean capturesOnly) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int move = list[i];
+            IPiece victim = board.pieceAt(Moves.toX(move), Moves.toY(move));
+            if (victim == null && capturesOnly) {
+                continue;
+            }
+            int key = victim == null ? 0 : 1 + victim.getType() * 8 + IPiece.KING
+                    - board.pieceAt(Moves.fromX(move), Moves.fromY(move)).getType();
+            int j = kept++;
+            // insertion sort, highest key first; stable so generation order breaks ties
+            while (j > 0 && keys[j - 1] < key) {
+                list[j] = list[j - 1];
+                keys[j] = keys[j - 1];
+                j--;
+            }
+            list[j] = move;
+            keys[j] = key;
+        }
+        return kept;
+    }
+}
@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Generates training data by having the Searcher play itself. Games are spread over a pool of worker threads; each
+ * game opens with a few random moves so the games differ, then plays the best move of a fixed depth search until it
+ * ends or reaches maxPlies, which is scored as a draw.
+ *
+ * Along the way quiet positions (not in check, with a quiescence score equal to the static evaluation) are sampled
+ * at sampleRate. Once the game is over every sample is labelled with its result and handed to a single writer
+ * through a bounded queue, so memory stays bounded however far the writer falls behind.
+ */
+public class SelfPlay {
+    private static final byte[] DONE = new byte[0];
+
+    private final Evaluator evaluator;
+    private final int depth;
+    private final int randomPlies;
+    private final int maxPlies;
+    private final double sampleRate;
+    private final long seed;
+    private long positions;
+    private long elapsedNanos;
+
+    /**
+     * @param evaluator - evaluation used by the searches
+     * @param depth - search depth of every move after the opening
+     * @param randomPlies - number of random plies opening each game
+     * @param maxPlies - length after which a game is adjudicated a draw
+     * @param sampleRate - chance that a quiet position is kept
+     * @param seed - seed of the random openings and sampling; game i always uses seed + i
+     */
+    SelfPlay(Evaluator evaluator, int depth, int randomPlies, int maxPlies, double sampleRate, long seed) {
+        if (randomPlies < 0 || maxPlies < 1) {
+            throw new IllegalArgumentException("randomPlies must not be negative and maxPlies must be positive");
+        } else if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate must be between 0 and 1");
+        }
+        this.evaluator = evaluator;
+        this.depth = depth;
+        this.randomPlies = randomPlies;
+        this.maxPlies = maxPlies;
+        this.sampleRate = sampleRate;
+        this.seed = seed;
+    }
+
+    /**
+     * Plays the games and writes their samples as TrainingRecords.
+     * @param games - number of games to play
+     * @param threads - number of worker threads
+     * @param out - writer of TrainingRecord.BYTES wide records
+     * @return number of positions written
+     */
+    long run(int games, int threads, ShardWriter out) throws IOException, InterruptedException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(threads * 4);
+        final AtomicInteger nextGame = new AtomicInteger();
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        final int gameCount = games;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        long written = 0;
+        try {
+            for (int i = 0; i < threads; i++) {
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Searcher searcher = new Searcher(SelfPlay.this.evaluator);
+                        ByteBuffer samples = ByteBuffer.allocate(SelfPlay.this.maxPlies * TrainingRecord.BYTES);
+                        try {
+                            for (int game; (game = nextGame.getAndIncrement()) < gameCount; ) {
+                                samples.clear();
+                                SelfPlay.this.play(game, searcher, samples);
+                                queue.put(Arrays.copyOf(samples.array(), samples.position()));
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } catch (RuntimeException e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            try {
+                                queue.put(DONE);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    }
+                });
+            }
+            for (int running = threads; running > 0; ) {
+                byte[] records = queue.take();
+                if (records == DONE) {
+                    running--;
+                } else {
+                    out.write(records, 0, records.length);
+                    written += records.length / TrainingRecord.BYTES;
+                }
+            }
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        this.positions = written;
+        this.elapsedNanos = System.nanoTime() - start;
+        return written;
+    }
+
+    /**
+     * @return positions written by the last run
+     */
+    long getPositions() {
+        return this.positions;
+    }
+
+    /**
+     * @return positions written per second by the last run
+     */
+    double getPositionsPerSecond() {
+        return this.elapsedNanos == 0 ? 0 : this.positions * 1e9 / this.elapsedNanos;
+    }
+
+    /**
+     * Plays one game, appending its labelled samples to the buffer.
+     * @return TrainingRecord result of the game
+     */
+    int play(int game, Searcher searcher, ByteBuffer samples) {
+        Random random = new Random(this.seed + game);
+        ChessBoard board = new ChessBoard(false);
+        int[] moves = new int[ChessBoard.MAX_MOVES];
+        int result = TrainingRecord.DRAW;
+        for (int ply = 0; ply < this.maxPlies && !board.isDrawByRule(); ply++) {
+            int count = board.legalMoves(moves);
+            if (count == 0) {
+                if (board.isInCheck()) {
+                    result = board.isWhiteTurn() ? TrainingRecord.BLACK_WIN : TrainingRecord.WHITE_WIN;
+                }
+                break;
+            }
+            if (ply < this.randomPlies) {
+                board.doMove(moves[random.nextInt(count)]);
+                continue;
+            }
+            int score = searcher.search(board, this.depth);
+            if (random.nextDouble() < this.sampleRate && !board.isInCheck()
+                    && searcher.quiesce(board) == this.evaluator.evaluate(board)) {
+                TrainingRecord.write(board, board.isWhiteTurn() ? score : -score, samples);
+            }
+            board.doMove(searcher.getBestMove());
+        }
+        for (int offset = 0; offset < samples.position(); offset += TrainingRecord.BYTES) {
+            TrainingRecord.setResult(samples, offset, result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,142 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes fixed-width records to a series of shard files named shard-000000.bin, shard-000001.bin, ... in a directory,
+ * starting a new shard once the current one holds recordsPerShard records. Shards are optionally gzip compressed,
+ * in which case they are named shard-000000.bin.gz and so on. Records never span two shards.
+ */
+public class ShardWriter implements Closeable {
+    private static final String PREFIX = "shard-";
+    private static final String SUFFIX = ".bin";
+    private static final String GZIP_SUFFIX = ".bin.gz";
+
+    private final Path directory;
+    private final int recordBytes;
+    private final long recordsPerShard;
+    private final boolean compress;
+    private int shardIndex;
+    private OutputStream out;
+    private long shardRecords;
+    private long records;
+
+    /**
+     * @param directory - directory for the shards, created if missing; existing shards are kept and numbering
+     *                  continues after the highest of them
+     * @param recordBytes - size of each record
+     * @param recordsPerShard - number of records in a full shard
+     * @param compress - gzip the shards
+     */
+    ShardWriter(Path directory, int recordBytes, long recordsPerShard, boolean compress) throws IOException {
+        if (recordBytes < 1 || recordsPerShard < 1) {
+            throw new IllegalArgumentException("Record size and records per shard must be positive");
+        }
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.recordBytes = recordBytes;
+        this.recordsPerShard = recordsPerShard;
+        this.compress = compress;
+        for (Path shard : shards(directory)) {
+            this.shardIndex = Math.max(this.shardIndex, shardIndex(shard) + 1);
+        }
+    }
+
+    /**
+     * Writes whole records from the array.
+     * @param length - number of bytes, a multiple of the record size
+     */
+    void write(byte[] records, int offset, int length) throws IOException {
+        if (length % this.recordBytes != 0) {
+            throw new IllegalArgumentException("Length must be a multiple of " + this.recordBytes);
+        }
+        while (length > 0) {
+            if (this.out == null || this.shardRecords == this.recordsPerShard) {
+                this.openShard();
+            }
+            int count = (int) Math.min(length / this.recordBytes, this.recordsPerShard - this.shardRecords);
+            this.out.write(records, offset, count * this.recordBytes);
+            offset += count * this.recordBytes;
+            length -= count * this.recordBytes;
+            this.shardRecords += count;
+            this.records += count;
+        }
+    }
+
+    /**
+     * @return number of records written since this writer was opened
+     */
+    long getRecords() {
+        return this.records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.out != null) {
+            this.out.close();
+            this.out = null;
+        }
+    }
+
+    /**
+     * Lists the shards in a directory in the order they were written.
+     */
+    static List<Path> shards(Path directory) throws IOException {
+        List<Path> shards = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return shards;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(SUFFIX) || name.endsWith(GZIP_SUFFIX)) {
+                    shards.add(path);
+                }
+            }
+        }
+        Collections.sort(shards);
+        return shards;
+    }
+
+    /**
+     * @return the number in a shard's name, or -1 if it has none
+     */
+    private static int shardIndex(Path shard) {
+        String name = shard.getFileName().toString();
+        String digits = name.substring(PREFIX.length(), name.indexOf('.', PREFIX.length()));
+        try {
+            return Integer.parseInt(digits);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Opens a shard for reading, decompressing it if needed.
+     */
+    static InputStream open(Path shard) throws IOException {
+        InputStream in = Files.newInputStream(shard);
+        return shard.getFileName().toString().endsWith(GZIP_SUFFIX) ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+
+    private void openShard() throws IOException {
+        this.close();
+        String name = String.format("%s%06d%s", PREFIX, this.shardIndex++, this.compress ? GZIP_SUFFIX : SUFFIX);
+        // never truncates an existing shard
+        OutputStream file = Files.newOutputStream(this.directory.resolve(name), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        this.out = this.compress ? new GZIPOutputStream(file, 1 << 16) : new BufferedOutputStream(file, 1 << 16);
+        this.shardRecords = 0;
+    }
+}
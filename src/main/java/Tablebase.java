@@ -0,0 +1,248 @@
+import piece.IPiece;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Memory-mapped endgame table for one material set, written by TablebaseGenerator.
+ *
+ * A material set is named by its pieces, white first, each side starting with its king, for example "KQK" or
+ * "KRKP". The table holds one byte per (square of every piece, side to move), from the point of view of the side
+ * to move:
+ *  0            draw
+ *  d > 0        win, mate in d plies
+ *  -(d + 1)     loss, mated in d plies
+ *  INVALID      the position cannot occur
+ *
+ * Positions are assumed to have no castling rights. A table also answers for the same material with colors swapped,
+ * by mirroring the board.
+ */
+public class Tablebase implements Closeable {
+    static final int MAGIC = 0x54424C31;
+    static final int HEADER_BYTES = 16;
+    static final byte DRAW = 0;
+    static final byte INVALID = -128;
+    static final int NOT_FOUND = Integer.MIN_VALUE;
+    private static final String LETTERS = "PNBRQK";
+
+    private final String name;
+    private final int[] types;
+    private final boolean[] blacks;
+    private final FileChannel channel;
+    private final ByteBuffer values;
+
+    /**
+     * Maps a table file.
+     * @param path - file written by TablebaseGenerator
+     * @throws IOException if the file cannot be mapped or is not a table
+     */
+    Tablebase(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        MappedByteBuffer buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.channel.size());
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            this.channel.close();
+            throw new IOException("Not a tablebase: " + path);
+        }
+        byte[] nameBytes = new byte[buffer.get(4)];
+        for (int i = 0; i < nameBytes.length; i++) {
+            nameBytes[i] = buffer.get(5 + i);
+        }
+        this.name = new String(nameBytes, StandardCharsets.US_ASCII);
+        this.types = parseTypes(this.name);
+        this.blacks = parseColors(this.name);
+        if (buffer.limit() != HEADER_BYTES + size(this.types.length)) {
+            this.channel.close();
+            throw new IOException("Truncated tablebase: " + path);
+        }
+        buffer.position(HEADER_BYTES);
+        this.values = buffer.slice();
+    }
+
+    String getName() {
+        return this.name;
+    }
+
+    /**
+     * Reads the value of a position by index.
+     * @param index - as computed by index()
+     * @return the stored value
+     */
+    byte probe(int index) {
+        return this.values.get(index);
+    }
+
+    /**
+     * Reads the value of a board position, if its material matches this table with either coloring.
+     * @param board - position to look up
+     * @return the stored value, or NOT_FOUND if the material does not match
+     */
+    int probe(ChessBoard board) {
+        int[] squares = new int[this.types.length];
+        if (this.assign(board, squares, false)) {
+            return this.probe(index(squares, !board.isWhiteTurn()));
+        } else if (this.assign(board, squares, true)) {
+            return this.probe(index(squares, board.isWhiteTurn()));
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Probes the first table whose material matches the board.
+     * @return the stored value, or NOT_FOUND if no table matches
+     */
+    static int probe(List<Tablebase> tables, ChessBoard board) {
+        for (Tablebase table : tables) {
+            int value = table.probe(board);
+            if (value != NOT_FOUND) {
+                return value;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /*
+        ################################
+            VALUES
+        ################################
+     */
+
+    static boolean isWin(int value) {
+        return value > 0 && value != NOT_FOUND;
+    }
+
+    static boolean isLoss(int value) {
+        return value < 0 && value != INVALID && value != NOT_FOUND;
+    }
+
+    /**
+     * @return plies to mate for a win or loss, 0 otherwise
+     */
+    static int distance(int value) {
+        return isWin(value) ? value : isLoss(value) ? -value - 1 : 0;
+    }
+
+    static byte win(int plies) {
+        if (plies < 1 || plies > 127) {
+            throw new IllegalStateException("Distance out of range: " + plies);
+        }
+        return (byte) plies;
+    }
+
+    static byte loss(int plies) {
+        if (plies < 0 || plies > 126) {
+            throw new IllegalStateException("Distance out of range: " + plies);
+        }
+        return (byte) -(plies + 1);
+    }
+
+    /*
+        ################################
+            LAYOUT
+        ################################
+     */
+
+    /**
+     * @return number of positions in a table of the given number of pieces
+     */
+    static int size(int pieces) {
+        return 2 << (6 * pieces);
+    }
+
+    /**
+     * @param squares - square (x * 8 + y) of each piece, in the order of the material name
+     * @param blackToMove - side to move
+     * @return index of the position
+     */
+    static int index(int[] squares, boolean blackToMove) {
+        int index = 0;
+        for (int sq : squares) {
+            index = index << 6 | sq;
+        }
+        return index << 1 | (blackToMove ? 1 : 0);
+    }
+
+    /**
+     * Inverse of index().
+     * @return true if black is to move
+     */
+    static boolean decode(int index, int[] squares) {
+        int rest = index >>> 1;
+        for (int i = squares.length - 1; i >= 0; i--) {
+            squares[i] = rest & 63;
+            rest >>>= 6;
+        }
+        return (index & 1) == 1;
+    }
+
+    /**
+     * @return piece type of every piece of a material name
+     */
+    static int[] parseTypes(String name) {
+        parseColors(name);
+        int[] types = new int[name.length()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = LETTERS.indexOf(name.charAt(i));
+        }
+        return types;
+    }
+
+    /**
+     * @return true for every black piece of a material name
+     */
+    static boolean[] parseColors(String name) {
+        int blackKing = name.indexOf('K', 1);
+        if (name.isEmpty() || name.charAt(0) != 'K' || blackKing < 0 || name.indexOf('K', blackKing + 1) >= 0) {
+            throw new IllegalArgumentException("Material must be written as K...K...: " + name);
+        }
+        boolean[] blacks = new boolean[name.length()];
+        for (int i = 0; i < name.length(); i++) {
+            if (LETTERS.indexOf(name.charAt(i)) < 0) {
+                throw new IllegalArgumentException("Unknown piece " + name.charAt(i) + " in " + name);
+            }
+            blacks[i] = i >= blackKing;
+        }
+        return blacks;
+    }
+
+    /**
+     * Matches the pieces of the board to the pieces of this table.
+     * @param flip - swap colors and mirror the board vertically
+     * @return false if the material does not match
+     */
+    private boolean assign(ChessBoard board, int[] squares, boolean flip) {
+        boolean[] used = new boolean[this.types.length];
+        int count = 0;
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                IPiece p = board.pieceAt(x, y);
+                if (p == null) {
+                    continue;
+                }
+                boolean black = p.getIsBlack() != flip;
+                int slot = 0;
+                while (slot < this.types.length
+                        && (used[slot] || this.types[slot] != p.getType() || this.blacks[slot] != black)) {
+                    slot++;
+                }
+                if (slot == this.types.length) {
+                    return false;
+                }
+                used[slot] = true;
+                squares[slot] = x * 8 + (flip ? 7 - y : y);
+                count++;
+            }
+        }
+        return count == this.types.length;
+    }
+}
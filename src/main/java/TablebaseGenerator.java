@@ -0,0 +1,573 @@
+import piece.Bishop;
+import piece.IPiece;
+import piece.King;
+import piece.Knight;
+import piece.MoveTargets;
+import piece.Pawn;
+import piece.Queen;
+import piece.Rook;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Builds endgame tables by retrograde analysis, for material sets of up to 4 pieces.
+ *
+ * Moves are checked with the piece classes themselves, so a table follows exactly the rules ChessBoard plays by.
+ * A capture leads into the table of the smaller material set, which is generated first. The generator then works
+ * backwards from mate, one distance at a time: every position mated in d plies makes its predecessors wins in d + 1,
+ * and a position whose moves all lead to wins for the opponent becomes a loss. Each step is split over a fork-join
+ * pool, with the unresolved move count of every position kept in an AtomicIntegerArray.
+ *
+ * Positions that are never resolved are draws.
+ */
+public class TablebaseGenerator {
+    private static final int SPLIT = 2048;
+    private static final int UNRESOLVED_DRAW = -1;
+
+    private final ForkJoinPool pool;
+    private final Map<String, byte[]> tables;
+
+    /**
+     * @param pool - pool to run the analysis on
+     */
+    TablebaseGenerator(ForkJoinPool pool) {
+        this.pool = pool;
+        this.tables = new HashMap<>();
+    }
+
+    TablebaseGenerator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Generates the table of a material set, and of every smaller set a capture can lead to, and writes each of them
+     * to [name].tb in the directory.
+     * @param name - material set, for example "KRK"
+     * @param directory - where to write the tables
+     * @return the files written, smallest material first
+     */
+    List<Path> generate(String name, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        List<String> order = new ArrayList<>();
+        this.generate(name, order);
+        List<Path> written = new ArrayList<>();
+        for (String table : order) {
+            Path path = directory.resolve(table + ".tb");
+            write(path, table, this.tables.get(table));
+            written.add(path);
+        }
+        return written;
+    }
+
+    /**
+     * Generates a table and its smaller sets in memory.
+     * @param name - material set
+     * @param order - receives every set generated, smallest first
+     * @return the table values
+     */
+    byte[] generate(String name, List<String> order) {
+        byte[] values = this.tables.get(name);
+        if (values != null) {
+            return values;
+        }
+        int[] types = Tablebase.parseTypes(name);
+        if (types.length > 4) {
+            throw new IllegalArgumentException("At most 4 pieces are supported: " + name);
+        }
+        for (int i = 0; i < types.length; i++) {
+            String child = childName(name, i);
+            if (child != null && !this.tables.containsKey(child)) {
+                this.generate(child, order);
+            }
+        }
+        values = new Analysis(name).run();
+        this.tables.put(name, values);
+        order.add(name);
+        return values;
+    }
+
+    /**
+     * @return the material left after the piece at slot is captured, or null if it is a king or only kings are left
+     */
+    private static String childName(String name, int slot) {
+        if (name.charAt(slot) == 'K') {
+            return null;
+        }
+        String child = name.substring(0, slot) + name.substring(slot + 1);
+        return child.length() > 2 ? child : null;
+    }
+
+    private static void write(Path path, String name, byte[] values) throws IOException {
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(Tablebase.HEADER_BYTES);
+            header.putInt(Tablebase.MAGIC).put((byte) name.length()).put(name.getBytes(StandardCharsets.US_ASCII));
+            header.clear();
+            out.write(header);
+            ByteBuffer body = ByteBuffer.wrap(values);
+            while (body.hasRemaining()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * Retrograde analysis of one material set.
+     */
+    private class Analysis {
+        private final String name;
+        private final int[] types;
+        private final boolean[] blacks;
+        private final IPiece[][] pieces;
+        private final byte[][] childValues;
+        private final int size;
+        private final byte[] values;
+        // legal non-capture moves whose outcome is still unknown, -1 once the position is resolved
+        private final AtomicIntegerArray remaining;
+        // fastest win through a capture, 0 if none
+        private final byte[] captureWin;
+        // slowest loss through a capture, or UNRESOLVED_DRAW if a capture draws
+        private final byte[] captureFloor;
+        // positions waiting for their distance: wins still to be claimed, and losses already claimed
+        private final Map<Integer, IntList> pendingWins = new HashMap<>();
+        private final Map<Integer, IntList> pendingLosses = new HashMap<>();
+
+        Analysis(String name) {
+            this.name = name;
+            this.types = Tablebase.parseTypes(name);
+            this.blacks = Tablebase.parseColors(name);
+            this.size = Tablebase.size(this.types.length);
+            this.values = new byte[this.size];
+            this.remaining = new AtomicIntegerArray(this.size);
+            this.captureWin = new byte[this.size];
+            this.captureFloor = new byte[this.size];
+            this.pieces = new IPiece[this.types.length][64];
+            for (int i = 0; i < this.types.length; i++) {
+                for (int sq = 0; sq < 64; sq++) {
+                    this.pieces[i][sq] = createPiece(this.types[i], sq / 8, sq % 8, this.blacks[i]);
+                }
+            }
+            this.childValues = new byte[this.types.length][];
+            for (int i = 0; i < this.types.length; i++) {
+                String child = childName(name, i);
+                this.childValues[i] = child == null ? null : TablebaseGenerator.this.tables.get(child);
+            }
+        }
+
+        byte[] run() {
+            IntList frontier = new IntList();
+            TablebaseGenerator.this.pool.invoke(new Sweep(this, 0, this.size, frontier, true));
+            for (int distance = 0; distance < 128; distance++) {
+                IntList wins = this.pendingWins.remove(distance);
+                if (wins != null) {
+                    for (int i = 0; i < wins.size; i++) {
+                        if (this.claim(wins.data[i])) {
+                            this.values[wins.data[i]] = Tablebase.win(distance);
+                            frontier.add(wins.data[i]);
+                        }
+                    }
+                }
+                IntList losses = this.pendingLosses.remove(distance);
+                if (losses != null) {
+                    frontier.addAll(losses);
+                }
+                if (frontier.size == 0 && this.pendingWins.isEmpty() && this.pendingLosses.isEmpty()) {
+                    break;
+                }
+                IntList next = new IntList();
+                TablebaseGenerator.this.pool.invoke(new Propagate(this, frontier, 0, frontier.size, distance, next));
+                frontier = next;
+            }
+            return this.values;
+        }
+
+        /**
+         * Marks a position resolved. Only one thread wins the claim.
+         */
+        private boolean claim(int index) {
+            while (true) {
+                int count = this.remaining.get(index);
+                if (count < 0) {
+                    return false;
+                } else if (this.remaining.compareAndSet(index, count, -1)) {
+                    return true;
+                }
+            }
+        }
+
+        private synchronized void addPending(Map<Integer, IntList> pending, int distance, IntList positions) {
+            IntList list = pending.get(distance);
+            if (list == null) {
+                pending.put(distance, list = new IntList());
+            }
+            list.addAll(positions);
+        }
+
+        /**
+         * Places the pieces of a position on the grid.
+         * @return false if two pieces share a square
+         */
+        private boolean place(IPiece[][] grid, int[] squares) {
+            for (IPiece[] column : grid) {
+                Arrays.fill(column, null);
+            }
+            for (int i = 0; i < squares.length; i++) {
+                int sq = squares[i];
+                if (grid[sq / 8][sq % 8] != null) {
+                    return false;
+                }
+                grid[sq / 8][sq % 8] = this.pieces[i][sq];
+            }
+            return true;
+        }
+
+        /**
+         * Checks whether the king of the given color is attacked, ignoring the piece at slot skip.
+         */
+        private boolean kingAttacked(IPiece[][] grid, int[] squares, boolean black, int skip) {
+            int king = -1;
+            for (int i = 0; i < squares.length; i++) {
+                if (this.types[i] == IPiece.KING && this.blacks[i] == black) {
+                    king = squares[i];
+                }
+            }
+            for (int i = 0; i < squares.length; i++) {
+                if (i != skip && this.blacks[i] != black
+                        && this.pieces[i][squares[i]].isValidMove(grid, squares[i] / 8, squares[i] % 8, king / 8, king % 8)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Sets up one position: marks it invalid, mated or stalemated, or counts its non-capture moves and records
+         * what its captures lead to.
+         * @return true if the position is mated
+         */
+        private boolean initialise(int index, IPiece[][] grid, int[] squares) {
+            boolean blackToMove = Tablebase.decode(index, squares);
+            if (!this.place(grid, squares) || this.kingAttacked(grid, squares, !blackToMove, -1)) {
+                this.values[index] = Tablebase.INVALID;
+                this.remaining.set(index, -1);
+                return false;
+            }
+            int quiet = 0;
+            int captures = 0;
+            int bestWin = 0;
+            int floor = 0;
+            int[] child = new int[squares.length - 1];
+            for (int i = 0; i < squares.length; i++) {
+                if (this.blacks[i] != blackToMove) {
+                    continue;
+                }
+                int from = squares[i];
+                for (int to : MoveTargets.targets(this.types[i], blackToMove, from)) {
+                    IPiece target = grid[to / 8][to % 8];
+                    if ((target != null && target.getIsBlack() == blackToMove)
+                            || !this.pieces[i][from].isValidMove(grid, from / 8, from % 8, to / 8, to % 8)) {
+                        continue;
+                    }
+                    int captured = -1;
+                    if (target != null) {
+                        for (int j = 0; j < squares.length; j++) {
+                            if (squares[j] == to) {
+                                captured = j;
+                            }
+                        }
+                    }
+                    grid[from / 8][from % 8] = null;
+                    grid[to / 8][to % 8] = this.pieces[i][to];
+                    squares[i] = to;
+                    boolean legal = !this.kingAttacked(grid, squares, blackToMove, captured);
+                    squares[i] = from;
+                    grid[to / 8][to % 8] = target;
+                    grid[from / 8][from % 8] = this.pieces[i][from];
+                    if (!legal) {
+                        continue;
+                    } else if (captured < 0) {
+                        quiet++;
+                        continue;
+                    }
+                    captures++;
+                    int value = 0;
+                    if (this.childValues[captured] != null) {
+                        for (int j = 0, k = 0; j < squares.length; j++) {
+                            if (j != captured) {
+                                child[k++] = j == i ? to : squares[j];
+                            }
+                        }
+                        value = this.childValues[captured][Tablebase.index(child, !blackToMove)];
+                    }
+                    if (Tablebase.isLoss(value)) {
+                        int win = Tablebase.distance(value) + 1;
+                        bestWin = bestWin == 0 ? win : Math.min(bestWin, win);
+                    } else if (Tablebase.isWin(value) && floor != UNRESOLVED_DRAW) {
+                        floor = Math.max(floor, Tablebase.distance(value) + 1);
+                    } else {
+                        floor = UNRESOLVED_DRAW;
+                    }
+                }
+            }
+            if (quiet + captures == 0) {
+                boolean mated = this.kingAttacked(grid, squares, blackToMove, -1);
+                this.values[index] = mated ? Tablebase.loss(0) : Tablebase.DRAW;
+                this.remaining.set(index, -1);
+                return mated;
+            }
+            this.remaining.set(index, quiet);
+            this.captureWin[index] = (byte) bestWin;
+            this.captureFloor[index] = (byte) floor;
+            return false;
+        }
+
+        /**
+         * Collects every position from which a non-capture move leads to the given one.
+         */
+        private void predecessors(int index, IPiece[][] grid, int[] squares, IntList out) {
+            boolean blackToMove = Tablebase.decode(index, squares);
+            boolean mover = !blackToMove;
+            this.place(grid, squares);
+            for (int i = 0; i < squares.length; i++) {
+                if (this.blacks[i] != mover) {
+                    continue;
+                }
+                int to = squares[i];
+                for (int from : MoveTargets.sources(this.types[i], mover, to)) {
+                    if (grid[from / 8][from % 8] != null) {
+                        continue;
+                    }
+                    grid[to / 8][to % 8] = null;
+                    grid[from / 8][from % 8] = this.pieces[i][from];
+                    squares[i] = from;
+                    if (this.pieces[i][from].isValidMove(grid, from / 8, from % 8, to / 8, to % 8)
+                            && !this.kingAttacked(grid, squares, blackToMove, -1)) {
+                        out.add(Tablebase.index(squares, mover));
+                    }
+                    squares[i] = to;
+                    grid[from / 8][from % 8] = null;
+                    grid[to / 8][to % 8] = this.pieces[i][to];
+                }
+            }
+        }
+
+        /**
+         * Handles a predecessor of a position that is a win for its side to move, found at the given distance.
+         * @return true if the predecessor became a loss at distance + 1
+         */
+        private boolean onWinReached(int index, int distance, IntList laterLosses, List<Integer> laterDistances) {
+            while (true) {
+                int count = this.remaining.get(index);
+                if (count < 0) {
+                    return false;
+                } else if (count > 1 || this.captureWin[index] > 0 || this.captureFloor[index] == UNRESOLVED_DRAW) {
+                    if (count == 0 || this.remaining.compareAndSet(index, count, count - 1)) {
+                        return false;
+                    }
+                } else if (this.remaining.compareAndSet(index, count, -1)) {
+                    int loss = Math.max(distance + 1, this.captureFloor[index]);
+                    this.values[index] = Tablebase.loss(loss);
+                    if (loss == distance + 1) {
+                        return true;
+                    }
+                    laterLosses.add(index);
+                    laterDistances.add(loss);
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * First pass over every position of a table.
+     */
+    @SuppressWarnings("serial")
+    private static class Sweep extends RecursiveAction {
+        private final Analysis analysis;
+        private final int from;
+        private final int to;
+        private final IntList mates;
+        private final boolean root;
+
+        Sweep(Analysis analysis, int from, int to, IntList mates, boolean root) {
+            this.analysis = analysis;
+            this.from = from;
+            this.to = to;
+            this.mates = mates;
+            this.root = root;
+        }
+
+        protected void compute() {
+            if (this.to - this.from > SPLIT * 16) {
+                int mid = (this.from + this.to) >>> 1;
+                invokeAll(new Sweep(this.analysis, this.from, mid, this.mates, false),
+                        new Sweep(this.analysis, mid, this.to, this.mates, false));
+                return;
+            }
+            IPiece[][] grid = new IPiece[8][8];
+            int[] squares = new int[this.analysis.types.length];
+            IntList mated = new IntList();
+            Map<Integer, IntList> wins = new HashMap<>();
+            Map<Integer, IntList> losses = new HashMap<>();
+            for (int index = this.from; index < this.to; index++) {
+                if (this.analysis.initialise(index, grid, squares)) {
+                    mated.add(index);
+                } else if (this.analysis.remaining.get(index) >= 0) {
+                    int win = this.analysis.captureWin[index];
+                    int floor = this.analysis.captureFloor[index];
+                    if (win > 0) {
+                        IntList list = wins.get(win);
+                        if (list == null) {
+                            wins.put(win, list = new IntList());
+                        }
+                        list.add(index);
+                    } else if (this.analysis.remaining.get(index) == 0 && floor != UNRESOLVED_DRAW) {
+                        // every move is a capture into a lost child table
+                        this.analysis.remaining.set(index, -1);
+                        this.analysis.values[index] = Tablebase.loss(floor);
+                        IntList list = losses.get(floor);
+                        if (list == null) {
+                            losses.put(floor, list = new IntList());
+                        }
+                        list.add(index);
+                    }
+                }
+            }
+            synchronized (this.mates) {
+                this.mates.addAll(mated);
+            }
+            for (Map.Entry<Integer, IntList> e : wins.entrySet()) {
+                this.analysis.addPending(this.analysis.pendingWins, e.getKey(), e.getValue());
+            }
+            for (Map.Entry<Integer, IntList> e : losses.entrySet()) {
+                this.analysis.addPending(this.analysis.pendingLosses, e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Resolves the predecessors of the positions found at one distance.
+     */
+    @SuppressWarnings("serial")
+    private static class Propagate extends RecursiveAction {
+        private final Analysis analysis;
+        private final IntList frontier;
+        private final int from;
+        private final int to;
+        private final int distance;
+        private final IntList next;
+
+        Propagate(Analysis analysis, IntList frontier, int from, int to, int distance, IntList next) {
+            this.analysis = analysis;
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+            this.distance = distance;
+            this.next = next;
+        }
+
+        protected void compute() {
+            if (this.to - this.from > SPLIT) {
+                int mid = (this.from + this.to) >>> 1;
+                invokeAll(new Propagate(this.analysis, this.frontier, this.from, mid, this.distance, this.next),
+                        new Propagate(this.analysis, this.frontier, mid, this.to, this.distance, this.next));
+                return;
+            }
+            IPiece[][] grid = new IPiece[8][8];
+            int[] squares = new int[this.analysis.types.length];
+            IntList predecessors = new IntList();
+            IntList resolved = new IntList();
+            IntList laterLosses = new IntList();
+            List<Integer> laterDistances = new ArrayList<>();
+            for (int f = this.from; f < this.to; f++) {
+                int index = this.frontier.data[f];
+                boolean lost = Tablebase.isLoss(this.analysis.values[index]);
+                predecessors.size = 0;
+                this.analysis.predecessors(index, grid, squares, predecessors);
+                for (int p = 0; p < predecessors.size; p++) {
+                    int previous = predecessors.data[p];
+                    if (lost) {
+                        if (this.analysis.claim(previous)) {
+                            this.analysis.values[previous] = Tablebase.win(this.distance + 1);
+                            resolved.add(previous);
+                        }
+                    } else if (this.analysis.onWinReached(previous, this.distance, laterLosses, laterDistances)) {
+                        resolved.add(previous);
+                    }
+                }
+            }
+            synchronized (this.next) {
+                this.next.addAll(resolved);
+            }
+            for (int i = 0; i < laterLosses.size; i++) {
+                IntList one = new IntList();
+                one.add(laterLosses.data[i]);
+                this.analysis.addPending(this.analysis.pendingLosses, laterDistances.get(i), one);
+            }
+        }
+    }
+
+    /**
+     * Growable list of primitive ints.
+     */
+    private static class IntList {
+        private int[] data = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (this.size == this.data.length) {
+                this.data = Arrays.copyOf(this.data, this.size * 2);
+            }
+            this.data[this.size++] = value;
+        }
+
+        void addAll(IntList other) {
+            if (this.size + other.size > this.data.length) {
+                this.data = Arrays.copyOf(this.data, Math.max(this.data.length * 2, this.size + other.size));
+            }
+            System.arraycopy(other.data, 0, this.data, this.size, other.size);
+            this.size += other.size;
+        }
+    }
+
+    /*
+        ################################
+            PIECES
+        ################################
+     */
+
+    /**
+     * Creates a piece standing on a square. Pawns on their starting rank have not moved yet; no other piece may
+     * castle.
+     */
+    private static IPiece createPiece(int type, int x, int y, boolean black) {
+        switch (type) {
+            case IPiece.PAWN:
+                return new Pawn(x, y, black, y == (black ? 6 : 1));
+            case IPiece.KNIGHT:
+                return new Knight(x, y, black, false);
+            case IPiece.BISHOP:
+                return new Bishop(x, y, black, false);
+            case IPiece.ROOK:
+                return new Rook(x, y, black, false);
+            case IPiece.QUEEN:
+                return new Queen(x, y, black, false);
+            default:
+                return new King(x, y, black, false);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import piece.IPiece;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-width binary form of a position sampled for training. Every record is 36 bytes:
+ *
+ *  [squares:32][whiteToMove:1][score:2][result:1]
+ *
+ * squares holds a nibble per square x * 8 + y, low nibble first: 0 for empty, otherwise 1 + type for white pieces and
+ * 7 + type for black ones. score is the search score in centipawns from white's point of view and result is the
+ * outcome of the game: 0 black won, 1 draw, 2 white won.
+ */
+public final class TrainingRecord {
+    static final int BYTES = 36;
+    static final int BLACK_WIN = 0;
+    static final int DRAW = 1;
+    static final int WHITE_WIN = 2;
+    private static final int SIDE = 32;
+    private static final int SCORE = 33;
+    private static final int RESULT = 35;
+
+    private TrainingRecord() {
+    }
+
+    /**
+     * Writes the position and score at the buffer's position and advances it. The result is left as a draw until
+     * setResult is called.
+     * @param score - centipawns from white's point of view, clamped to a short
+     */
+    static void write(ChessBoard board, int score, ByteBuffer out) {
+        for (int square = 0; square < 64; square += 2) {
+            out.put((byte) (code(board.pieceAt(square / 8, square % 8))
+                    | code(board.pieceAt(square / 8, square % 8 + 1)) << 4));
+        }
+        out.put((byte) (board.isWhiteTurn() ? 1 : 0));
+        out.putShort((short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, score)));
+        out.put((byte) DRAW);
+    }
+
+    /**
+     * Sets the result of the record starting at offset.
+     */
+    static void setResult(ByteBuffer records, int offset, int result) {
+        records.put(offset + RESULT, (byte) result);
+    }
+
+    /**
+     * @return the square's nibble of the record starting at offset
+     */
+    static int piece(ByteBuffer records, int offset, int square) {
+        return (records.get(offset + square / 2) >> ((square & 1) * 4)) & 0xF;
+    }
+
+    static boolean isWhiteToMove(ByteBuffer records, int offset) {
+        return records.get(offset + SIDE) != 0;
+    }
+
+    static int score(ByteBuffer records, int offset) {
+        return records.getShort(offset + SCORE);
+    }
+
+    static int result(ByteBuffer records, int offset) {
+        return records.get(offset + RESULT);
+    }
+
+    /**
+     * @return IPiece type of a nonzero nibble
+     */
+    static int type(int code) {
+        return (code - 1) % 6;
+    }
+
+    static boolean isBlack(int code) {
+        return code > 6;
+    }
+
+    private static int code(IPiece p) {
+        return p == null ? 0 : 1 + (p.getIsBlack() ? 6 : 0) + p.getType();
+    }
+}
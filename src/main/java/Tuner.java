@@ -0,0 +1,227 @@
+import piece.IPiece;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Texel-style tuning of the Evaluator weights against game results. A position scored e centipawns from white's
+ * point of view is expected to score
+ *
+ *  sigmoid(e) = 1 / (1 + 10^(-k * e / 400))
+ *
+ * for white, and the tuner minimises the mean squared difference between that and the result of the game it came
+ * from (1 white won, 0.5 draw, 0 black won). The evaluation, pawn structure terms included, is linear in its weights,
+ * so the gradient is exact.
+ *
+ * The dataset is streamed from TrainingRecord shards one chunk at a time. Each chunk is a mini-batch: its loss and
+ * gradient are summed over slices of the chunk on a fork-join pool, then the weights take one Adam step.
+ */
+public class Tuner {
+    private static final int SLICE = 1024;
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+    private static final double EPSILON = 1e-8;
+
+    private final ForkJoinPool pool;
+    private final double k;
+    private final double learningRate;
+    private final int chunkRecords;
+    private final double[] weights;
+    private final double[] moment;
+    private final double[] velocity;
+    private long steps;
+
+    /**
+     * @param start - weights to start from
+     * @param k - scaling of the sigmoid
+     * @param learningRate - step size, in centipawns
+     * @param chunkRecords - records in each mini-batch
+     * @param pool - pool computing the gradients
+     */
+    Tuner(Evaluator start, double k, double learningRate, int chunkRecords, ForkJoinPool pool) {
+        if (k <= 0 || learningRate <= 0 || chunkRecords < 1) {
+            throw new IllegalArgumentException("k, learningRate and chunkRecords must be positive");
+        }
+        this.pool = pool;
+        this.k = k;
+        this.learningRate = learningRate;
+        this.chunkRecords = chunkRecords;
+        this.weights = new double[Evaluator.PARAMS];
+        this.moment = new double[Evaluator.PARAMS];
+        this.velocity = new double[Evaluator.PARAMS];
+        int[] params = start.getParams();
+        for (int i = 0; i < params.length; i++) {
+            this.weights[i] = params[i];
+        }
+    }
+
+    /**
+     * Makes one pass over the dataset, stepping after every chunk.
+     * @return mean loss over the pass, measured before each step
+     */
+    double epoch(List<Path> shards) throws IOException {
+        return this.pass(shards, true);
+    }
+
+    /**
+     * @return mean loss of the current weights over the dataset
+     */
+    double loss(List<Path> shards) throws IOException {
+        return this.pass(shards, false);
+    }
+
+    /**
+     * @return evaluator with the current weights rounded to centipawns
+     */
+    Evaluator getEvaluator() {
+        int[] params = new int[this.weights.length];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = (int) Math.round(this.weights[i]);
+        }
+        return new Evaluator(params);
+    }
+
+    private double pass(List<Path> shards, boolean step) throws IOException {
+        byte[] chunk = new byte[this.chunkRecords * TrainingRecord.BYTES];
+        double loss = 0;
+        long records = 0;
+        for (Path shard : shards) {
+            try (InputStream in = ShardWriter.open(shard)) {
+                int length;
+                while ((length = read(in, chunk)) > 0) {
+                    int count = length / TrainingRecord.BYTES;
+                    double[] sums = this.pool.invoke(new Gradient(ByteBuffer.wrap(chunk), 0, count, step));
+                    loss += sums[Evaluator.PARAMS];
+                    records += count;
+                    if (step) {
+                        this.step(sums, count);
+                    }
+                }
+            }
+        }
+        return records == 0 ? 0 : loss / records;
+    }
+
+    private void step(double[] gradient, int count) {
+        this.steps++;
+        double correction1 = 1 - Math.pow(BETA1, this.steps);
+        double correction2 = 1 - Math.pow(BETA2, this.steps);
+        for (int i = 0; i < this.weights.length; i++) {
+            double g = gradient[i] / count;
+            this.moment[i] = BETA1 * this.moment[i] + (1 - BETA1) * g;
+            this.velocity[i] = BETA2 * this.velocity[i] + (1 - BETA2) * g * g;
+            this.weights[i] -= this.learningRate * (this.moment[i] / correction1)
+                    / (Math.sqrt(this.velocity[i] / correction2) + EPSILON);
+        }
+    }
+
+    /**
+     * Fills the array with whole records from the stream.
+     * @return number of bytes read, 0 at the end of the stream
+     */
+    private static int read(InputStream in, byte[] chunk) throws IOException {
+        int length = 0;
+        for (int n; length < chunk.length && (n = in.read(chunk, length, chunk.length - length)) > 0; ) {
+            length += n;
+        }
+        if (length % TrainingRecord.BYTES != 0) {
+            throw new IOException("Truncated record at the end of a shard");
+        }
+        return length;
+    }
+
+    /**
+     * Sums the loss and, if asked, its gradient over a range of records, splitting the range in half until it is
+     * no more than SLICE records. The result holds the gradient followed by the loss.
+     */
+    @SuppressWarnings("serial")
+    private class Gradient extends RecursiveTask<double[]> {
+        private final ByteBuffer records;
+        private final int from;
+        private final int to;
+        private final boolean gradient;
+
+        private Gradient(ByteBuffer records, int from, int to, boolean gradient) {
+            this.records = records;
+            this.from = from;
+            this.to = to;
+            this.gradient = gradient;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (this.to - this.from > SLICE) {
+                int middle = (this.from + this.to) >>> 1;
+                Gradient left = new Gradient(this.records, this.from, middle, this.gradient);
+                left.fork();
+                double[] sums = new Gradient(this.records, middle, this.to, this.gradient).compute();
+                double[] other = left.join();
+                for (int i = 0; i < sums.length; i++) {
+                    sums[i] += other[i];
+                }
+                return sums;
+            }
+            double[] w = Tuner.this.weights;
+            double[] sums = new double[Evaluator.PARAMS + 1];
+            double scale = Tuner.this.k * Math.log(10) / 400;
+            int[] terms = new int[PawnStructure.TERMS];
+            for (int r = this.from; r < this.to; r++) {
+                int offset = r * TrainingRecord.BYTES;
+                double eval = 0;
+                long whitePawns = 0;
+                long blackPawns = 0;
+                int whiteKing = -1;
+                int blackKing = -1;
+                for (int square = 0; square < 64; square++) {
+                    int code = TrainingRecord.piece(this.records, offset, square);
+                    if (code != 0) {
+                        int type = TrainingRecord.type(code);
+                        boolean isBlack = TrainingRecord.isBlack(code);
+                        double weight = w[type] + w[Evaluator.tableIndex(type, isBlack ? square ^ 7 : square)];
+                        eval += isBlack ? -weight : weight;
+                        if (type == IPiece.PAWN && isBlack) {
+                            blackPawns |= 1L << square;
+                        } else if (type == IPiece.PAWN) {
+                            whitePawns |= 1L << square;
+                        } else if (type == IPiece.KING && isBlack) {
+                            blackKing = square;
+                        } else if (type == IPiece.KING) {
+                            whiteKing = square;
+                        }
+                    }
+                }
+                PawnStructure.count(whitePawns, blackPawns, whiteKing, blackKing, terms);
+                for (int i = 0; i < PawnStructure.TERMS; i++) {
+                    eval += w[Evaluator.PAWN_TERMS + i] * terms[i];
+                }
+                double expected = 1 / (1 + Math.exp(-scale * eval));
+                double error = expected - TrainingRecord.result(this.records, offset) / 2.0;
+                sums[Evaluator.PARAMS] += error * error;
+                if (!this.gradient) {
+                    continue;
+                }
+                // d(error^2)/d(eval), then spread over the weights each piece used
+                double slope = 2 * error * expected * (1 - expected) * scale;
+                for (int square = 0; square < 64; square++) {
+                    int code = TrainingRecord.piece(this.records, offset, square);
+                    if (code != 0) {
+                        int type = TrainingRecord.type(code);
+                        boolean isBlack = TrainingRecord.isBlack(code);
+                        double signed = isBlack ? -slope : slope;
+                        sums[type] += signed;
+                        sums[Evaluator.tableIndex(type, isBlack ? square ^ 7 : square)] += signed;
+                    }
+                }
+                for (int i = 0; i < PawnStructure.TERMS; i++) {
+                    sums[Evaluator.PAWN_TERMS + i] += slope * terms[i];
+                }
+            }
+            return sums;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package common;
+
+/**
+ * Packs a move into 12 bits: (fromX * 8 + fromY) << 6 | (toX * 8 + toY).
+ */
+public final class Moves {
+
+    private Moves() {
+    }
+
+    public static int pack(int fromX, int fromY, int toX, int toY) {
+        return (fromX * 8 + fromY) << 6 | (toX * 8 + toY);
+    }
+
+    public static int fromX(int move) {
+        return (move >> 9) & 7;
+    }
+
+    public static int fromY(int move) {
+        return (move >> 6) & 7;
+    }
+
+    public static int toX(int move) {
+        return (move >> 3) & 7;
+    }
+
+    public static int toY(int move) {
+        return move & 7;
+    }
+
+    /**
+     * @return the move as {fromX, fromY, toX, toY}
+     */
+    public static int[] unpack(int move) {
+        return new int[]{fromX(move), fromY(move), toX(move), toY(move)};
+    }
+
+    /**
+     * Parses the four digit form "fxfytxty", for example "4143".
+     * @param text - four digits between 0 and 7
+     * @return the packed move
+     */
+    public static int parse(String text) {
+        if (text.length() != 4) {
+            throw new IllegalArgumentException("Move must be four digits: " + text);
+        }
+        int[] digits = new int[4];
+        for (int i = 0; i < 4; i++) {
+            digits[i] = text.charAt(i) - '0';
+            if (digits[i] < 0 || digits[i] > 7) {
+                throw new IllegalArgumentException("Move must be four digits: " + text);
+            }
+        }
+        return pack(digits[0], digits[1], digits[2], digits[3]);
+    }
+
+    /**
+     * Parses one line of a game collection: moves in the four digit form, separated by whitespace.
+     * @param line - line of the collection
+     * @return the packed moves, or null for an empty line or a line starting with '#'
+     */
+    public static int[] parseGame(String line) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+            return null;
+        }
+        String[] tokens = line.split("\\s+");
+        int[] moves = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            moves[i] = parse(tokens[i]);
+        }
+        return moves;
+    }
+
+    /**
+     * @return the four digit form "fxfytxty"
+     */
+    public static String toString(int move) {
+        return "" + fromX(move) + fromY(move) + toX(move) + toY(move);
+    }
+}
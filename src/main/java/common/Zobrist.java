@@ -0,0 +1,54 @@
+package common;
+
+import java.util.Random;
+
+/**
+ * Fixed random keys used to hash a board position. A position hash is the xor of the key of every
+ * (piece type, color, square) on the board, plus the side key when it is black's turn.
+ */
+public final class Zobrist {
+    private static final long[] PIECE_KEYS = new long[2 * 6 * 64];
+    private static final long SIDE_KEY;
+    private static final long[] CASTLE_KEYS = new long[16];
+
+    static {
+        Random random = new Random(0x5EEDC0DEL);
+        for (int i = 0; i < PIECE_KEYS.length; i++) {
+            PIECE_KEYS[i] = random.nextLong();
+        }
+        SIDE_KEY = random.nextLong();
+        for (int i = 1; i < CASTLE_KEYS.length; i++) {
+            CASTLE_KEYS[i] = random.nextLong();
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * Returns the key of a piece on a square.
+     * @param type - piece type, one of the IPiece type constants
+     * @param isBlack - color of the piece
+     * @param x - x-coordinate of the square
+     * @param y - y-coordinate of the square
+     * @return the key to xor in or out of a position hash
+     */
+    public static long pieceKey(int type, boolean isBlack, int x, int y) {
+        return PIECE_KEYS[((isBlack ? 6 : 0) + type) * 64 + x * 8 + y];
+    }
+
+    /**
+     * Returns the key xor-ed into the hash when it is black's turn.
+     */
+    public static long sideKey() {
+        return SIDE_KEY;
+    }
+
+    /**
+     * Returns the key of a set of castling rights, zero when no castling is possible.
+     * @param rights - four bits: white king side, white queen side, black king side, black queen side
+     */
+    public static long castleKey(int rights) {
+        return CASTLE_KEYS[rights];
+    }
+}
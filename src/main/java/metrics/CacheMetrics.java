@@ -0,0 +1,68 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for one cache: hits, misses and evictions. Like MethodMetrics they only count while metrics are enabled.
+ */
+public class CacheMetrics implements CacheMetricsMBean {
+    private final String name;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    CacheMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public void hit() {
+        if (Metrics.isEnabled()) {
+            this.hits.increment();
+        }
+    }
+
+    public void miss() {
+        if (Metrics.isEnabled()) {
+            this.misses.increment();
+        }
+    }
+
+    public void evict() {
+        if (Metrics.isEnabled()) {
+            this.evictions.increment();
+        }
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    public double getHitRate() {
+        long hits = this.hits.sum();
+        long total = hits + this.misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public void reset() {
+        this.hits.reset();
+        this.misses.reset();
+        this.evictions.reset();
+    }
+
+    public String toString() {
+        return String.format("%-12s hits=%d misses=%d evictions=%d hitRate=%.3f",
+                this.name, this.getHits(), this.getMisses(), this.getEvictions(), this.getHitRate());
+    }
+}
@@ -0,0 +1,17 @@
+package metrics;
+
+/**
+ * JMX view of the counters kept for one cache.
+ */
+public interface CacheMetricsMBean {
+
+    long getHits();
+
+    long getMisses();
+
+    long getEvictions();
+
+    double getHitRate();
+
+    void reset();
+}
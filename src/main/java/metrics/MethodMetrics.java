@@ -0,0 +1,179 @@
+package metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for one instrumented method: calls, time, bytes allocated by the calling thread, a latency histogram and
+ * rejects grouped by reason. Everything is kept in LongAdders so that many game threads can record at once without
+ * contending on a shared field.
+ *
+ * Usage:
+ * <pre>
+ *     long nanos = m.startNanos();
+ *     long bytes = m.startBytes();
+ *     try {
+ *         ...
+ *     } finally {
+ *         m.record(nanos, bytes);
+ *     }
+ * </pre>
+ */
+public class MethodMetrics implements MethodMetricsMBean {
+    private final String name;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    // bucket i counts calls that took [2^(i-1), 2^i) nanoseconds
+    private final LongAdder[] histogram = new LongAdder[64];
+    private final ConcurrentHashMap<String, LongAdder> rejects = new ConcurrentHashMap<>();
+
+    MethodMetrics(String name) {
+        this.name = name;
+        for (int i = 0; i < this.histogram.length; i++) {
+            this.histogram[i] = new LongAdder();
+        }
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return the start time to pass to record, or 0 if metrics are disabled
+     */
+    public long startNanos() {
+        return Metrics.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * @return the bytes allocated so far by the current thread, or -1 if metrics are disabled or unsupported
+     */
+    public long startBytes() {
+        return Metrics.isEnabled() ? ThreadUsage.allocatedBytes() : -1;
+    }
+
+    /**
+     * Records one call that started at the given values.
+     * @param startNanos - value returned by startNanos
+     * @param startBytes - value returned by startBytes
+     */
+    public void record(long startNanos, long startBytes) {
+        if (startNanos == 0) {
+            return;
+        }
+        long elapsed = System.nanoTime() - startNanos;
+        this.calls.increment();
+        this.nanos.add(elapsed);
+        this.maxNanos.accumulate(elapsed);
+        this.histogram[64 - Long.numberOfLeadingZeros(Math.max(elapsed, 0))].increment();
+        if (startBytes >= 0) {
+            this.bytes.add(ThreadUsage.allocatedBytes() - startBytes);
+        }
+    }
+
+    /**
+     * Counts a rejected call.
+     * @param reason - why the call was rejected
+     */
+    public void reject(String reason) {
+        if (Metrics.isEnabled()) {
+            this.rejects.computeIfAbsent(String.valueOf(reason), r -> new LongAdder()).increment();
+        }
+    }
+
+    public long getCalls() {
+        return this.calls.sum();
+    }
+
+    public long getTotalNanos() {
+        return this.nanos.sum();
+    }
+
+    public long getAverageNanos() {
+        long count = this.calls.sum();
+        return count == 0 ? 0 : this.nanos.sum() / count;
+    }
+
+    public long getP50Nanos() {
+        return this.percentile(0.50);
+    }
+
+    public long getP99Nanos() {
+        return this.percentile(0.99);
+    }
+
+    public long getMaxNanos() {
+        return this.maxNanos.get();
+    }
+
+    public long getAllocatedBytes() {
+        return this.bytes.sum();
+    }
+
+    public long getRejectCount() {
+        long total = 0;
+        for (LongAdder count : this.rejects.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of rejects for the given reason
+     */
+    public long getRejects(String reason) {
+        LongAdder count = this.rejects.get(reason);
+        return count == null ? 0 : count.sum();
+    }
+
+    public String getRejects() {
+        Map<String, Long> sorted = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : this.rejects.entrySet()) {
+            sorted.put(e.getKey(), e.getValue().sum());
+        }
+        return sorted.toString();
+    }
+
+    public void reset() {
+        this.calls.reset();
+        this.nanos.reset();
+        this.bytes.reset();
+        this.maxNanos.reset();
+        for (LongAdder bucket : this.histogram) {
+            bucket.reset();
+        }
+        this.rejects.clear();
+    }
+
+    public String toString() {
+        return String.format("%-12s calls=%d avg=%dns p50<%dns p99<%dns max=%dns alloc=%dB rejects=%s",
+                this.name, this.getCalls(), this.getAverageNanos(), this.getP50Nanos(), this.getP99Nanos(),
+                this.getMaxNanos(), this.getAllocatedBytes(), this.getRejects());
+    }
+
+    /**
+     * Returns the upper bound of the histogram bucket holding the given fraction of calls.
+     */
+    private long percentile(double fraction) {
+        long total = 0;
+        long[] counts = new long[this.histogram.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = this.histogram[i].sum();
+            total += counts[i];
+        }
+        long target = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target && seen > 0) {
+                return i == 63 ? Long.MAX_VALUE : 1L << i;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,27 @@
+package metrics;
+
+/**
+ * JMX view of the counters kept for one instrumented method.
+ */
+public interface MethodMetricsMBean {
+
+    long getCalls();
+
+    long getTotalNanos();
+
+    long getAverageNanos();
+
+    long getP50Nanos();
+
+    long getP99Nanos();
+
+    long getMaxNanos();
+
+    long getAllocatedBytes();
+
+    long getRejectCount();
+
+    String getRejects();
+
+    void reset();
+}
@@ -0,0 +1,125 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of the hot-path counters. Recording is off by default, in which case an instrumented call only pays for a
+ * volatile read. Turn it on with setEnabled or the system property chess.metrics=true.
+ */
+public final class Metrics {
+    public static final MethodMetrics PLAY_GAME = new MethodMetrics("playGame");
+    public static final MethodMetrics IS_VALID_MOVE = new MethodMetrics("isValidMove");
+    public static final MethodMetrics TEST_MOVE = new MethodMetrics("testMove");
+    public static final MethodMetrics IS_IN_CHECK = new MethodMetrics("isInCheck");
+    public static final MethodMetrics GET_BOARD = new MethodMetrics("getBoard");
+
+    public static final CacheMetrics LEGAL_MOVES = new CacheMetrics("legalMoves");
+
+    private static final List<MethodMetrics> ALL =
+            Arrays.asList(PLAY_GAME, IS_VALID_MOVE, TEST_MOVE, IS_IN_CHECK, GET_BOARD);
+    private static final List<CacheMetrics> CACHES = Arrays.asList(LEGAL_MOVES);
+
+    private static volatile boolean enabled = Boolean.getBoolean("chess.metrics");
+    private static ScheduledExecutorService dumper;
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * @return every method that is instrumented
+     */
+    public static List<MethodMetrics> all() {
+        return ALL;
+    }
+
+    /**
+     * @return every cache that is instrumented
+     */
+    public static List<CacheMetrics> caches() {
+        return CACHES;
+    }
+
+    /**
+     * Registers one MBean per instrumented method under ChessModel:type=Metrics,name=[method], and one per cache
+     * under ChessModel:type=Cache,name=[cache]. Registering twice is harmless.
+     */
+    public static synchronized void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (MethodMetrics m : ALL) {
+                ObjectName name = new ObjectName("ChessModel:type=Metrics,name=" + m.getName());
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(m, name);
+                }
+            }
+            for (CacheMetrics c : CACHES) {
+                ObjectName name = new ObjectName("ChessModel:type=Cache,name=" + c.getName());
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(c, name);
+                }
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register metrics MBeans", e);
+        }
+    }
+
+    /**
+     * Writes one line per instrumented method and cache.
+     * @param out - where to write
+     */
+    public static void dump(Appendable out) throws IOException {
+        for (MethodMetrics m : ALL) {
+            out.append(m.toString()).append('\n');
+        }
+        for (CacheMetrics c : CACHES) {
+            out.append(c.toString()).append('\n');
+        }
+    }
+
+    /**
+     * Starts writing a dump to the given stream at a fixed period, on a daemon thread. Replaces any earlier schedule.
+     * @param periodSeconds - seconds between dumps
+     * @param out - where to write
+     */
+    public static synchronized void startDump(long periodSeconds, PrintStream out) {
+        stopDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> {
+            try {
+                dump(out);
+                out.flush();
+            } catch (IOException e) {
+                // PrintStream does not throw
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Reads the CPU time and allocated bytes of the current thread, or of another live thread by id. All return -1 when
+ * the JVM cannot measure them.
+ */
+public final class ThreadUsage {
+    private static final java.lang.management.ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationBean();
+    private static final boolean CPU_SUPPORTED = cpuSupported();
+
+    private ThreadUsage() {
+    }
+
+    /**
+     * @return CPU time used by the current thread in nanoseconds, or -1 if unsupported
+     */
+    public static long cpuNanos() {
+        return CPU_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * @return bytes allocated so far by the current thread, or -1 if unsupported
+     */
+    public static long allocatedBytes() {
+        return ALLOCATIONS == null ? -1 : ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return CPU time used by a live thread in nanoseconds, or -1 if unsupported or the thread has ended
+     */
+    public static long cpuNanos(long threadId) {
+        return CPU_SUPPORTED ? THREADS.getThreadCpuTime(threadId) : -1;
+    }
+
+    /**
+     * @return bytes allocated so far by a live thread, or -1 if unsupported or the thread has ended
+     */
+    public static long allocatedBytes(long threadId) {
+        return ALLOCATIONS == null ? -1 : ALLOCATIONS.getThreadAllocatedBytes(threadId);
+    }
+
+    private static boolean cpuSupported() {
+        if (!THREADS.isCurrentThreadCpuTimeSupported()) {
+            return false;
+        }
+        THREADS.setThreadCpuTimeEnabled(true);
+        return true;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        }
+        return null;
+    }
+}
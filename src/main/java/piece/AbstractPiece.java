@@ -45,6 +45,15 @@ public abstract class AbstractPiece implements IPiece {
         this.isFirstMove = false;
     }
 
+    /**
+     * Puts the piece back where it was before a move, restoring whether it had moved yet.
+     */
+    public void undoMove(int x, int y, boolean isFirstMove) {
+        this.x = x;
+        this.y = y;
+        this.isFirstMove = isFirstMove;
+    }
+
     public boolean movePiece(IPiece[][] board, int fromX, int fromY, int toX, int toY) {
         if (this.isValidMove(board, fromX, fromY, toX, toY)) {
             this.makeMove(toX, toY);
@@ -60,6 +69,8 @@ public abstract class AbstractPiece implements IPiece {
 
     public abstract IPiece copy();
 
+    public abstract int getType();
+
     public String toString() {
         return this.isBlack ? "B" : "W";
     }
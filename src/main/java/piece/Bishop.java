@@ -29,6 +29,10 @@ public class Bishop extends AbstractPiece {
         return null;
     }
 
+    public int getType() {
+        return IPiece.BISHOP;
+    }
+
     @Override
     public  String toString() {
         return super.toString() + "B";
@@ -6,6 +6,13 @@ import java.util.List;
 
 public interface IPiece {
 
+    int PAWN = 0;
+    int KNIGHT = 1;
+    int BISHOP = 2;
+    int ROOK = 3;
+    int QUEEN = 4;
+    int KING = 5;
+
     int getX();
 
     int getY();
@@ -16,6 +23,10 @@ public interface IPiece {
 
     void makeMove(int x, int y);
 
+    void undoMove(int x, int y, boolean isFirstMove);
+
+    int getType();
+
     String toString();
 
     boolean isValidMove(IPiece[][] board, int fromX, int fromY, int toX, int toY);
@@ -52,6 +52,10 @@ public class King extends AbstractPiece {
         return moves;
     }
 
+    public int getType() {
+        return IPiece.KING;
+    }
+
     public String toString() {
         return super.toString() + "K";
     }
@@ -66,7 +70,7 @@ public class King extends AbstractPiece {
         // checks if king is attempting to move 2 places to either side.
         // if the castle of the appropriate side hasn't moved.
         // if there is nothing in between.
-        // TODO: check that there are no enemy pieces threatening the squares in between king and rook
+        // the squares the king passes through are checked for attacks by ChessBoard, which sees the enemy pieces
         int direction = toX - super.getX();
         IPiece castle;
 
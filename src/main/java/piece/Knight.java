@@ -27,6 +27,10 @@ public class Knight extends AbstractPiece {
         return null;
     }
 
+    public int getType() {
+        return IPiece.KNIGHT;
+    }
+
     @Override
     public String toString() {
         return super.toString() + "N";
@@ -0,0 +1,108 @@
+package piece;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Precomputed candidate squares for every piece type, color and square: a superset of the squares the piece could
+ * move to, ignoring what stands on the board. A move generator only needs to check these with isValidMove instead
+ * of all 64 squares. King targets include the two castling squares.
+ */
+public final class MoveTargets {
+    // [black][type][from] -> to
+    private static final int[][][][] TARGETS = targets();
+    // inverse of TARGETS: [black][type][to] -> from
+    private static final int[][][][] SOURCES = sources(TARGETS);
+
+    private MoveTargets() {
+    }
+
+    /**
+     * @param type - piece type, one of the IPiece type constants
+     * @param isBlack - color of the piece
+     * @param from - square of the piece, x * 8 + y
+     * @return the candidate squares, x * 8 + y. Callers must not modify the array.
+     */
+    public static int[] targets(int type, boolean isBlack, int from) {
+        return TARGETS[isBlack ? 1 : 0][type][from];
+    }
+
+    /**
+     * @param type - piece type, one of the IPiece type constants
+     * @param isBlack - color of the piece
+     * @param to - square the piece arrives on, x * 8 + y
+     * @return the squares it could have come from, x * 8 + y. Callers must not modify the array.
+     */
+    public static int[] sources(int type, boolean isBlack, int to) {
+        return SOURCES[isBlack ? 1 : 0][type][to];
+    }
+
+    private static int[][][][] targets() {
+        int[][][][] targets = new int[2][6][64][];
+        for (int color = 0; color < 2; color++) {
+            for (int type = 0; type < 6; type++) {
+                for (int from = 0; from < 64; from++) {
+                    List<Integer> list = new ArrayList<>();
+                    for (int to = 0; to < 64; to++) {
+                        if (to != from && isCandidate(type, color == 1, from / 8, from % 8, to / 8, to % 8)) {
+                            list.add(to);
+                        }
+                    }
+                    targets[color][type][from] = toArray(list);
+                }
+            }
+        }
+        return targets;
+    }
+
+    private static boolean isCandidate(int type, boolean isBlack, int fromX, int fromY, int toX, int toY) {
+        int dx = Math.abs(toX - fromX);
+        int dy = Math.abs(toY - fromY);
+        int forward = isBlack ? fromY - toY : toY - fromY;
+        boolean line = dx == 0 || dy == 0;
+        boolean diagonal = dx == dy;
+        switch (type) {
+            case IPiece.PAWN:
+                return (forward == 1 && dx <= 1) || (forward == 2 && dx == 0);
+            case IPiece.KNIGHT:
+                return dx * dy == 2;
+            case IPiece.BISHOP:
+                return diagonal;
+            case IPiece.ROOK:
+                return line;
+            case IPiece.QUEEN:
+                return line || diagonal;
+            default:
+                return Math.max(dx, dy) == 1 || (dx == 2 && dy == 0);
+        }
+    }
+
+    private static int[][][][] sources(int[][][][] targets) {
+        int[][][][] sources = new int[2][6][64][];
+        for (int color = 0; color < 2; color++) {
+            for (int type = 0; type < 6; type++) {
+                List<List<Integer>> lists = new ArrayList<>();
+                for (int sq = 0; sq < 64; sq++) {
+                    lists.add(new ArrayList<Integer>());
+                }
+                for (int from = 0; from < 64; from++) {
+                    for (int to : targets[color][type][from]) {
+                        lists.get(to).add(from);
+                    }
+                }
+                for (int sq = 0; sq < 64; sq++) {
+                    sources[color][type][sq] = toArray(lists.get(sq));
+                }
+            }
+        }
+        return sources;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
@@ -25,7 +25,7 @@ public class Pawn extends AbstractPiece {
         if (!super.getIsFirstMove()) {
             return this.isValidPawnMove(fromX, fromY, toX, toY, direction, to);
         } else {
-            return isFirstMoveValid(fromX, fromY, toX, toY, direction, to)
+            return isFirstMoveValid(board, fromX, fromY, toX, toY, direction, to)
                     || this.isValidPawnMove(fromX, fromY, toX, toY, direction, to);
         }
     }
@@ -42,17 +42,28 @@ public class Pawn extends AbstractPiece {
         return null;
     }
 
+    public int getType() {
+        return IPiece.PAWN;
+    }
+
     @Override
     public String toString() {
         return super.toString() + "P";
     }
 
+    /**
+     * A pawn steps forward onto an empty square, or diagonally forward onto an occupied one.
+     */
     private boolean isValidPawnMove(int fromX, int fromY, int toX, int toY, int direction, IPiece to) {
-        return (fromX == toX && (fromY + direction == toY))
+        return (fromX == toX && (fromY + direction == toY) && to == null)
                 || ((Math.abs(fromX - toX) == 1) && (fromY + direction == toY) && to != null);
     }
 
-    private boolean isFirstMoveValid(int fromX, int fromY, int toX, int toY, int direction, IPiece to) {
-        return (fromX == toX) && (toY == fromY + 2 * direction) && (to == null);
+    /**
+     * On its first move a pawn may also step two squares forward, if both squares are empty.
+     */
+    private boolean isFirstMoveValid(IPiece[][] board, int fromX, int fromY, int toX, int toY, int direction, IPiece to) {
+        return (fromX == toX) && (toY == fromY + 2 * direction) && (to == null)
+                && board[fromX][fromY + direction] == null;
     }
 }
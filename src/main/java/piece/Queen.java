@@ -30,6 +30,10 @@ public class Queen extends AbstractPiece {
         return new Queen(super.getX(), super.getY(), super.getIsBlack(), super.getIsFirstMove());
     }
 
+    public int getType() {
+        return IPiece.QUEEN;
+    }
+
     @Override
     public String toString() {
         return super.toString() + "Q";
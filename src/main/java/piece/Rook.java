@@ -21,7 +21,7 @@ public class Rook extends AbstractPiece {
     @Override
     public boolean isValidMove(IPiece[][] board, int fromX, int fromY, int toX, int toY) {
         return super.validInlineMove(fromX, fromY, toX, toY)
-                || super.validLineMove(board, fromX, fromY, toX, toY, 8);
+                && super.validLineMove(board, fromX, fromY, toX, toY, 8);
     }
 
     @Override
@@ -29,6 +29,10 @@ public class Rook extends AbstractPiece {
         return null;
     }
 
+    public int getType() {
+        return IPiece.ROOK;
+    }
+
     @Override
     public String toString() {
         return super.toString() + "C";
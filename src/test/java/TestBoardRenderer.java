@@ -0,0 +1,45 @@
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestBoardRenderer {
+
+    @Test
+    public void testFullRender() {
+        ChessBoard board = new ChessBoard();
+        String text = board.toString();
+        assertEquals(BoardRenderer.FULL_LENGTH, text.length());
+        assertTrue(text.contains("\u2551 BC \u2551 BN \u2551 BB \u2551 BQ \u2551 BK \u2551"));
+
+        ByteBuffer buffer = ByteBuffer.allocate(BoardRenderer.FULL_BYTES);
+        BoardRenderer.render(board, buffer);
+        assertEquals(0, buffer.remaining());
+        assertEquals(text, new String(buffer.array(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testDiff() {
+        ChessBoard board = new ChessBoard();
+        BoardRenderer renderer = new BoardRenderer();
+        StringBuilder sb = new StringBuilder();
+        assertEquals(32, renderer.renderDiff(board, sb));
+
+        sb.setLength(0);
+        assertEquals(0, renderer.renderDiff(board, sb));
+        assertEquals("\n", sb.toString());
+
+        board.playGame(4, 1, 4, 3);
+        sb.setLength(0);
+        assertEquals(2, renderer.renderDiff(board, sb));
+        assertEquals("41.. 43WP\n", sb.toString());
+
+        board.playGame(3, 6, 3, 4);
+        ByteBuffer buffer = ByteBuffer.allocate(BoardRenderer.MAX_DIFF_BYTES);
+        assertEquals(2, renderer.renderDiff(board, buffer));
+        assertEquals("34BP 36..\n", new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII));
+    }
+}
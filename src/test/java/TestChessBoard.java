@@ -1,7 +1,10 @@
+import common.Moves;
 import org.junit.Before;
 import org.junit.Test;
+import piece.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class TestChessBoard {
@@ -186,4 +189,114 @@ public class TestChessBoard {
         this.board1.playGame(3,2,3,3);
         System.out.println(this.board1);
     }
+
+    @Test
+    public void testGameStatusOngoing() {
+        assertEquals(GameStatus.ONGOING, board1.getGameStatus());
+        assertFalse(board1.isGameOver());
+    }
+
+    @Test
+    public void testGameStatusCheckmate() {
+        // fool's mate
+        board1.playGame(5, 1, 5, 2);
+        board1.playGame(4, 6, 4, 4);
+        board1.playGame(6, 1, 6, 3);
+        board1.playGame(3, 7, 7, 3);
+        assertEquals(GameStatus.CHECKMATE, board1.getGameStatus());
+        assertTrue(board1.isGameOver());
+    }
+
+    @Test
+    public void testGameStatusStalemate() {
+        IPiece[][] grid = new IPiece[8][8];
+        grid[7][7] = new King(7, 7, true, false);
+        grid[6][5] = new Queen(6, 5, false, false);
+        grid[0][0] = new King(0, 0, false, false);
+        ChessBoard board = new ChessBoard(grid, false);
+        assertEquals(GameStatus.STALEMATE, board.getGameStatus());
+    }
+
+    @Test
+    public void testGameStatusInsufficientMaterial() {
+        IPiece[][] grid = new IPiece[8][8];
+        grid[4][7] = new King(4, 7, true, false);
+        grid[2][0] = new Bishop(2, 0, false, false);
+        grid[4][0] = new King(4, 0, false, false);
+        ChessBoard board = new ChessBoard(grid, true);
+        assertEquals(GameStatus.INSUFFICIENT_MATERIAL, board.getGameStatus());
+    }
+
+    @Test
+    public void testGameStatusRepetition() {
+        for (int i = 0; i < 2; i++) {
+            board1.playGame(6, 0, 5, 2);
+            board1.playGame(6, 7, 5, 5);
+            board1.playGame(5, 2, 6, 0);
+            assertEquals(GameStatus.ONGOING, board1.getGameStatus());
+            board1.playGame(5, 5, 6, 7);
+        }
+        assertEquals(GameStatus.REPETITION, board1.getGameStatus());
+    }
+
+    @Test
+    public void testGameStatusRepetitionNeedsSameCastlingRights() {
+        // the rook steps away and back: the start position returns without white's king side castling right
+        board1.playGame(6, 0, 5, 2);
+        board1.playGame(6, 7, 5, 5);
+        board1.playGame(7, 0, 6, 0);
+        board1.playGame(5, 5, 6, 7);
+        board1.playGame(6, 0, 7, 0);
+        board1.playGame(6, 7, 5, 5);
+        board1.playGame(5, 2, 6, 0);
+        board1.playGame(5, 5, 6, 7);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(GameStatus.ONGOING, board1.getGameStatus());
+            board1.playGame(6, 0, 5, 2);
+            board1.playGame(6, 7, 5, 5);
+            board1.playGame(5, 2, 6, 0);
+            board1.playGame(5, 5, 6, 7);
+        }
+        assertEquals(GameStatus.REPETITION, board1.getGameStatus());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPinnedPieceCannotExposeKing() {
+        IPiece[][] grid = new IPiece[8][8];
+        grid[4][0] = new King(4, 0, false, false);
+        grid[4][1] = new Rook(4, 1, false, false);
+        grid[4][7] = new Rook(4, 7, true, false);
+        grid[7][7] = new King(7, 7, true, false);
+        ChessBoard board = new ChessBoard(grid, true);
+        int[] moves = new int[ChessBoard.MAX_MOVES];
+        for (int i = board.legalMoves(moves) - 1; i >= 0; i--) {
+            assertEquals(4, Moves.fromX(moves[i]) == 4 && Moves.fromY(moves[i]) == 1 ? Moves.toX(moves[i]) : 4);
+        }
+        board.playGame(4, 1, 0, 1);
+    }
+
+    @Test
+    public void testLegalMovesDoAndUndo() {
+        int[] moves = new int[ChessBoard.MAX_MOVES];
+        assertEquals(20, board1.legalMoves(moves));
+
+        java.util.Random random = new java.util.Random(7);
+        long hash = board1.getPositionHash();
+        String before = board1.toString();
+        int played = 0;
+        for (; played < 40; played++) {
+            int count = board1.legalMoves(moves);
+            if (count == 0) {
+                break;
+            }
+            board1.doMove(moves[random.nextInt(count)]);
+        }
+        for (int i = 0; i < played; i++) {
+            board1.undoMove();
+        }
+        assertEquals(hash, board1.getPositionHash());
+        assertEquals(before, board1.toString());
+        assertTrue(board1.isWhiteTurn());
+        assertEquals(20, board1.legalMoves(moves));
+    }
 }
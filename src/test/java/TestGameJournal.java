@@ -0,0 +1,154 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestGameJournal {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplay() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        ChessBoard expected = new ChessBoard();
+        try (GameJournal journal = new GameJournal(dir, 1 << 12, 4)) {
+            journal.newGame(1);
+            journal.newGame(2);
+            journal.move(1, 4, 1, 4, 3);
+            expected.playGame(4, 1, 4, 3);
+            journal.move(2, 3, 1, 3, 3);
+            journal.move(1, 4, 6, 4, 4);
+            expected.playGame(4, 6, 4, 4);
+            journal.endGame(2);
+        }
+
+        Map<Integer, ChessBoard> games = GameJournal.replay(dir);
+        assertEquals(1, games.size());
+        assertEquals(expected.getPositionHash(), games.get(1).getPositionHash());
+        assertTrue(games.get(1).isWhiteTurn());
+    }
+
+    @Test
+    public void testRotationAndReopen() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        // two records per segment
+        try (GameJournal journal = new GameJournal(dir, 2 * GameJournal.RECORD_BYTES, 1)) {
+            journal.newGame(7);
+            journal.move(7, 6, 0, 5, 2);
+            journal.move(7, 6, 7, 5, 5);
+        }
+        try (GameJournal journal = new GameJournal(dir, 2 * GameJournal.RECORD_BYTES, 1)) {
+            journal.move(7, 5, 2, 6, 0);
+        }
+        assertTrue(Files.exists(dir.resolve("journal-000001.log")));
+        assertFalse(Files.exists(dir.resolve("journal-000002.log")));
+
+        ChessBoard expected = new ChessBoard();
+        expected.playGame(6, 0, 5, 2);
+        expected.playGame(6, 7, 5, 5);
+        expected.playGame(5, 2, 6, 0);
+        assertEquals(expected.getPositionHash(), GameJournal.replay(dir).get(7).getPositionHash());
+    }
+
+    @Test
+    public void testCheckpointDropsEndedGames() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        // four records per segment, so the many ended games below start many segments
+        try (GameJournal journal = new GameJournal(dir, 4 * GameJournal.RECORD_BYTES, 1)) {
+            journal.newGame(1);
+            journal.move(1, 4, 1, 4, 3);
+            for (int id = 2; id < 50; id++) {
+                journal.newGame(id);
+                journal.move(id, 6, 0, 5, 2);
+                journal.endGame(id);
+            }
+            journal.move(1, 4, 6, 4, 4);
+        }
+        int files;
+        try (java.util.stream.Stream<Path> list = Files.list(dir)) {
+            files = (int) list.count();
+        }
+        // the latest checkpoint and the segments written since it
+        assertTrue(files <= 3);
+
+        Map<Integer, ChessBoard> games = GameJournal.replay(dir);
+        assertEquals(1, games.size());
+        ChessBoard expected = new ChessBoard();
+        expected.playGame(4, 1, 4, 3);
+        expected.playGame(4, 6, 4, 4);
+        assertEquals(expected.getPositionHash(), games.get(1).getPositionHash());
+
+        try (GameJournal reopened = new GameJournal(dir, 4 * GameJournal.RECORD_BYTES, 1)) {
+            assertEquals(1, reopened.takeRestoredGames().size());
+            reopened.move(1, 6, 0, 5, 2);
+        }
+        expected.playGame(6, 0, 5, 2);
+        assertEquals(expected.getPositionHash(), GameJournal.replay(dir).get(1).getPositionHash());
+    }
+
+    @Test
+    public void testRestartAfterCheckpointOnly() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        try (GameJournal journal = new GameJournal(dir, 2 * GameJournal.RECORD_BYTES, 1)) {
+            journal.newGame(1);
+            journal.move(1, 4, 1, 4, 3);
+            // fills the first segment, so this record starts the second one and its checkpoint
+            journal.newGame(2);
+        }
+        // as if the process died after the checkpoint was renamed but before its segment was written
+        Files.delete(dir.resolve("journal-000001.log"));
+        assertTrue(Files.exists(dir.resolve("checkpoint-000001.log")));
+
+        try (GameJournal journal = new GameJournal(dir, 2 * GameJournal.RECORD_BYTES, 1)) {
+            journal.move(1, 4, 6, 4, 4);
+        }
+        Map<Integer, ChessBoard> games = GameJournal.replay(dir);
+        assertEquals(1, games.size());
+        ChessBoard expected = new ChessBoard();
+        expected.playGame(4, 1, 4, 3);
+        expected.playGame(4, 6, 4, 4);
+        assertEquals(expected.getPositionHash(), games.get(1).getPositionHash());
+    }
+
+    @Test
+    public void testBadRecordsSkipOnlyTheirGame() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        try (GameJournal journal = new GameJournal(dir, 1 << 12, 4)) {
+            journal.newGame(1);
+            journal.newGame(2);
+            journal.move(1, 4, 1, 4, 5);
+            journal.move(2, 4, 1, 4, 3);
+            journal.move(3, 4, 1, 4, 3);
+        }
+        Map<Integer, ChessBoard> games = GameJournal.replay(dir);
+        assertEquals(1, games.size());
+        assertFalse(games.get(2).isWhiteTurn());
+    }
+
+    @Test
+    public void testServerRestoresGames() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        Object client = new Object();
+        GameServer server = new GameServer(0, dir);
+        assertEquals("OK 1", server.handle(client, "NEW"));
+        assertEquals("OK ONGOING", server.handle(client, "MOVE 1 4 1 4 3"));
+        server.close();
+        server.run();
+
+        GameServer restarted = new GameServer(0, dir);
+        assertEquals(1, restarted.gameCount());
+        assertEquals("ERR Not a player of this game", restarted.handle(client, "STATUS 1"));
+        assertEquals("OK WHITE", restarted.handle(client, "JOIN 1"));
+        assertEquals("OK BLACK ONGOING", restarted.handle(client, "STATUS 1"));
+        assertEquals("OK 2", restarted.handle(client, "NEW"));
+        restarted.close();
+        restarted.run();
+    }
+}
@@ -0,0 +1,129 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestGameServer {
+    GameServer server;
+    Thread serverThread;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new GameServer(0);
+        serverThread = new Thread(server);
+        serverThread.start();
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.close();
+        serverThread.join(5000);
+    }
+
+    @Test
+    public void testPlayOverLocalhost() throws Exception {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+
+            out.println("NEW");
+            assertEquals("OK 1", in.readLine());
+
+            // fool's mate
+            out.println("MOVE 1 5 1 5 2");
+            assertEquals("OK ONGOING", in.readLine());
+            out.println("MOVE 1 4 6 4 4");
+            assertEquals("OK ONGOING", in.readLine());
+            out.println("MOVE 1 4 4 4 3");
+            assertEquals("ERR Other player's move", in.readLine());
+            out.println("MOVE 1 6 1 6 3");
+            assertEquals("OK ONGOING", in.readLine());
+            out.println("MOVE 1 3 7 7 3");
+            assertEquals("OK CHECKMATE", in.readLine());
+            out.println("STATUS 1");
+            assertEquals("OK WHITE CHECKMATE", in.readLine());
+            out.println("MOVE 1 0 1 0 2");
+            assertEquals("ERR Game is over", in.readLine());
+
+            out.println("END 1");
+            assertEquals("OK", in.readLine());
+            out.println("STATUS 1");
+            assertEquals("ERR No such game", in.readLine());
+        }
+    }
+
+    @Test
+    public void testBoard() throws Exception {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+
+            out.println("NEW");
+            assertTrue(in.readLine().startsWith("OK "));
+            out.println("BOARD 1");
+            assertEquals("OK CNBQKBNCPPPPPPPP................................ppppppppcnbqkbnc", in.readLine());
+        }
+    }
+
+    @Test
+    public void testMoves() throws Exception {
+        Object client = new Object();
+        server.handle(client, "NEW");
+        String moves = server.handle(client, "MOVES 1");
+        assertTrue(moves.startsWith("OK "));
+        assertEquals(20, moves.substring(3).split(" ").length);
+        assertTrue(moves.contains(" 4143"));
+        assertEquals(moves, server.handle(client, "MOVES 1"));
+        server.handle(client, "MOVE 1 4 1 4 3");
+        assertTrue(server.handle(client, "MOVES 1").contains(" 4644"));
+    }
+
+    @Test
+    public void testSeats() throws Exception {
+        Object white = new Object();
+        Object black = new Object();
+        Object stranger = new Object();
+        assertEquals("OK 1", server.handle(white, "NEW WHITE"));
+        assertEquals("ERR Not a player of this game", server.handle(black, "MOVE 1 4 1 4 3"));
+        assertEquals("OK BLACK", server.handle(black, "JOIN 1"));
+        assertEquals("ERR Game is full", server.handle(stranger, "JOIN 1"));
+        assertEquals("ERR Not your turn", server.handle(black, "MOVE 1 4 6 4 4"));
+        assertEquals("OK ONGOING", server.handle(white, "MOVE 1 4 1 4 3"));
+        assertEquals("ERR Not your turn", server.handle(white, "MOVE 1 4 3 4 4"));
+        assertEquals("OK ONGOING", server.handle(black, "MOVE 1 4 6 4 4"));
+        assertEquals("ERR Not a player of this game", server.handle(stranger, "STATUS 1"));
+        assertEquals("ERR Not a player of this game", server.handle(stranger, "END 1"));
+        assertEquals(1, server.gameCount());
+    }
+
+    @Test
+    public void testAbandonedGamesAreEnded() throws Exception {
+        Object white = new Object();
+        Object black = new Object();
+        server.handle(white, "NEW WHITE");
+        server.handle(black, "JOIN 1");
+        server.handle(white, "NEW");
+        server.release(white);
+        long now = System.currentTimeMillis();
+        server.endAbandonedGames(now + GameServer.ABANDON_MILLIS);
+        // game 1 still has its black player, game 2 is left with nobody
+        assertEquals(1, server.gameCount());
+
+        server.release(black);
+        server.endAbandonedGames(now + GameServer.ABANDON_MILLIS / 2);
+        assertEquals(1, server.gameCount());
+        Object back = new Object();
+        assertEquals("OK WHITE", server.handle(back, "JOIN 1"));
+        server.release(back);
+        server.endAbandonedGames(System.currentTimeMillis() + GameServer.ABANDON_MILLIS);
+        assertEquals(0, server.gameCount());
+    }
+}
@@ -0,0 +1,248 @@
+import org.junit.Test;
+import piece.IPiece;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestMatch {
+
+    // plays a fixed list of moves
+    static class ScriptedBot implements Bot {
+        private final int[][] moves;
+        private final int allocate;
+        private int next;
+
+        ScriptedBot(int allocate, int[]... moves) {
+            this.moves = moves;
+            this.allocate = allocate;
+        }
+
+        public String getName() {
+            return "scripted";
+        }
+
+        public int[] chooseMove(IPiece[][] board, boolean isWhite) {
+            if (this.allocate > 0) {
+                byte[] garbage = new byte[this.allocate];
+                garbage[0] = 1;
+            }
+            return this.moves[this.next++];
+        }
+    }
+
+    @Test
+    public void testFoolsMate() {
+        Bot white = new ScriptedBot(0, new int[]{5, 1, 5, 2}, new int[]{6, 1, 6, 3});
+        Bot black = new ScriptedBot(0, new int[]{4, 6, 4, 4}, new int[]{3, 7, 7, 3});
+        Match match = new Match(white, black, BotBudget.UNLIMITED).play();
+        assertEquals(GameStatus.CHECKMATE, match.getStatus());
+        assertEquals(Boolean.FALSE, match.getWhiteWon());
+        assertNull(match.getForfeit());
+        assertEquals(4, match.getRecord().size());
+        for (Match.MoveRecord r : match.getRecord()) {
+            assertTrue(r.getCpuNanos() >= 0);
+            assertNull(r.getRejection());
+        }
+    }
+
+    @Test
+    public void testAllocationBudgetForfeits() {
+        Bot white = new ScriptedBot(1 << 20, new int[]{4, 1, 4, 3});
+        Bot black = new ScriptedBot(0, new int[]{4, 6, 4, 4});
+        BotBudget budget = new BotBudget(Long.MAX_VALUE, 1 << 16, Long.MAX_VALUE, Long.MAX_VALUE);
+        Match match = new Match(white, black, budget).play();
+        assertEquals("scripted: Move allocation budget exceeded", match.getForfeit());
+        assertEquals(Boolean.FALSE, match.getWhiteWon());
+        assertTrue(match.getAllocatedBytes(true) >= 1 << 20);
+    }
+
+    // never returns on its own; stops only when interrupted
+    static class RunawayBot implements Bot {
+        private final boolean allocate;
+        private volatile long sink;
+
+        RunawayBot(boolean allocate) {
+            this.allocate = allocate;
+        }
+
+        public String getName() {
+            return "runaway";
+        }
+
+        public int[] chooseMove(IPiece[][] board, boolean isWhite) {
+            while (!Thread.currentThread().isInterrupted()) {
+                this.sink += this.allocate ? new long[64].length : 1;
+            }
+            return new int[]{4, 1, 4, 3};
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testRunawayCpuIsStopped() {
+        Bot black = new ScriptedBot(0);
+        BotBudget budget = new BotBudget(50_000_000L, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+        Match match = new Match(new RunawayBot(false), black, budget).play();
+        assertEquals("runaway: Move CPU budget exceeded", match.getForfeit());
+        assertEquals(Boolean.FALSE, match.getWhiteWon());
+        assertTrue(match.getCpuNanos(true) >= 50_000_000L);
+        assertNull(match.getRecord().get(0).getMove());
+    }
+
+    @Test(timeout = 10000)
+    public void testRunawayAllocationIsStopped() {
+        Bot black = new ScriptedBot(0);
+        BotBudget budget = new BotBudget(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, 32 << 20);
+        Match match = new Match(new RunawayBot(true), black, budget).play();
+        assertEquals("runaway: Game allocation budget exceeded", match.getForfeit());
+        assertTrue(match.getAllocatedBytes(true) > 32 << 20);
+    }
+
+    // ignores interrupts and runs until released
+    static class StubbornBot implements Bot {
+        private volatile boolean released;
+        private volatile long sink;
+
+        public String getName() {
+            return "stubborn";
+        }
+
+        public int[] chooseMove(IPiece[][] board, boolean isWhite) {
+            while (!this.released) {
+                this.sink++;
+            }
+            return new int[]{4, 1, 4, 3};
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testStubbornBotBlocksNewMatches() throws Exception {
+        StubbornBot stubborn = new StubbornBot();
+        BotBudget budget = new BotBudget(20_000_000L, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+        try {
+            Match match = new Match(stubborn, new ScriptedBot(0), budget).play();
+            assertEquals("stubborn: Move CPU budget exceeded", match.getForfeit());
+            assertEquals(1, Match.abandonedThreads());
+            try {
+                new Match(new ScriptedBot(0), new ScriptedBot(0), budget).play();
+                fail("Match started with a bot thread still running");
+            } catch (IllegalStateException e) {
+                assertEquals("1 abandoned bot thread(s) still running", e.getMessage());
+            }
+        } finally {
+            stubborn.released = true;
+        }
+        while (Match.abandonedThreads() > 0) {
+            Thread.sleep(1);
+        }
+        Match match = new Match(new ScriptedBot(0, new int[]{4, 1, 4, 3}), new ScriptedBot(0), budget).play();
+        assertNull(match.getRecord().get(0).getRejection());
+    }
+
+    // burns CPU on a thread of its own while the worker waits for it
+    static class HelperThreadBot implements Bot {
+        private final long burnNanos;
+        private volatile long sink;
+
+        HelperThreadBot(long burnNanos) {
+            this.burnNanos = burnNanos;
+        }
+
+        public String getName() {
+            return "helper";
+        }
+
+        public int[] chooseMove(IPiece[][] board, boolean isWhite) {
+            Thread helper = new Thread(() -> {
+                while (metrics.ThreadUsage.cpuNanos() < this.burnNanos) {
+                    this.sink++;
+                }
+            });
+            helper.start();
+            try {
+                helper.join();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return new int[]{4, 1, 4, 3};
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testHelperThreadsAreCounted() {
+        Match match = new Match(new HelperThreadBot(30_000_000L), new ScriptedBot(0), BotBudget.UNLIMITED).play();
+        assertNull(match.getRecord().get(0).getRejection());
+        // the helper ends between two samples, and what it used after the last one is lost
+        assertTrue(match.getRecord().get(0).getCpuNanos() >= 15_000_000L);
+
+        BotBudget budget = new BotBudget(20_000_000L, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+        match = new Match(new HelperThreadBot(200_000_000L), new ScriptedBot(0), budget).play();
+        assertEquals("helper: Move CPU budget exceeded", match.getForfeit());
+    }
+
+    @Test(timeout = 30000)
+    public void testMctsBotThinksWithinBudget() {
+        BotBudget budget = new BotBudget(100_000_000L, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+        Match match = new Match(new MctsBot(2, 10_000), new ScriptedBot(0), budget).play();
+        Match.MoveRecord first = match.getRecord().get(0);
+        assertNull(first.getRejection());
+        assertTrue(first.getCpuNanos() <= 100_000_000L);
+    }
+
+    // counts the threads in the worker's group once the wrapped bot has moved
+    static class GroupCountingBot implements Bot {
+        private final Bot bot;
+        private int threads;
+
+        GroupCountingBot(Bot bot) {
+            this.bot = bot;
+        }
+
+        public String getName() {
+            return this.bot.getName();
+        }
+
+        public void budgetLeft(long moveCpuNanos, long gameCpuNanos) {
+            this.bot.budgetLeft(moveCpuNanos, gameCpuNanos);
+        }
+
+        public int[] chooseMove(IPiece[][] board, boolean isWhite) {
+            int[] move = this.bot.chooseMove(board, isWhite);
+            this.threads = Thread.currentThread().getThreadGroup().activeCount();
+            return move;
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testMctsBotReusedAcrossMatches() {
+        GroupCountingBot bot = new GroupCountingBot(new MctsBot(2, 20));
+        for (int i = 0; i < 2; i++) {
+            Match match = new Match(bot, new ScriptedBot(0), BotBudget.UNLIMITED).play();
+            assertNull(match.getRecord().get(0).getRejection());
+            // the worker and both playout threads, which must have followed the bot into this match's group
+            assertTrue(bot.threads >= 3);
+        }
+    }
+
+    @Test
+    public void testErrorForfeits() {
+        Bot white = new ScriptedBot(0) {
+            public int[] chooseMove(IPiece[][] board, boolean isWhite) {
+                return this.chooseMove(board, isWhite);
+            }
+        };
+        Match match = new Match(white, new ScriptedBot(0), BotBudget.UNLIMITED).play();
+        assertEquals("scripted: Bot failed: java.lang.StackOverflowError", match.getForfeit());
+        assertEquals(Boolean.FALSE, match.getWhiteWon());
+    }
+
+    @Test
+    public void testIllegalMoveForfeits() {
+        Bot white = new ScriptedBot(0, new int[]{4, 1, 4, 5});
+        Bot black = new ScriptedBot(0);
+        Match match = new Match(white, black, BotBudget.UNLIMITED).play();
+        assertEquals("scripted: Invalid move", match.getForfeit());
+        assertEquals(Boolean.FALSE, match.getWhiteWon());
+    }
+}
@@ -0,0 +1,63 @@
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestMcts {
+    private static final long MILLIS = 1000000L;
+    private static final long PLAYOUTS = 1000;
+
+    private static ChessBoard foolsMate() {
+        // black to play Qh4 mate
+        ChessBoard board = new ChessBoard(false);
+        board.playGame(5, 1, 5, 2);
+        board.playGame(4, 6, 4, 4);
+        board.playGame(6, 1, 6, 3);
+        return board;
+    }
+
+    @Test
+    public void testFindsMate() throws Exception {
+        Mcts puct = new Mcts(new Evaluator(), 2, 1 << 16, true);
+        assertEquals("3773", common.Moves.toString(puct.search(foolsMate(), Long.MAX_VALUE, PLAYOUTS)));
+        assertTrue(puct.getPlayouts() >= PLAYOUTS);
+
+        Mcts uct = new Mcts(new Evaluator(), 2, 1 << 16, false);
+        assertEquals("3773", common.Moves.toString(uct.search(foolsMate(), Long.MAX_VALUE, PLAYOUTS)));
+    }
+
+    @Test
+    public void testTreeReuse() throws Exception {
+        Mcts mcts = new Mcts(new Evaluator(), 2, 1 << 16, true);
+        ChessBoard board = new ChessBoard(false);
+        mcts.search(board, Long.MAX_VALUE, 2000);
+        int first = mcts.getRootVisits();
+        mcts.search(board, Long.MAX_VALUE, 1000);
+        assertEquals(first + mcts.getPlayouts(), mcts.getRootVisits());
+
+        int[] moves = new int[ChessBoard.MAX_MOVES];
+        board.doMove(mcts.search(board, Long.MAX_VALUE, 1000));
+        board.legalMoves(moves);
+        board.doMove(moves[0]);
+        mcts.search(board, Long.MAX_VALUE, 1000);
+        assertTrue(mcts.getRootVisits() >= mcts.getPlayouts());
+        assertTrue(mcts.getNodes() < 1 << 16);
+    }
+
+    @Test
+    public void testStopsAtDeadline() throws Exception {
+        Mcts mcts = new Mcts(new Evaluator(), 2, 1 << 16, true);
+        long start = System.nanoTime();
+        mcts.search(new ChessBoard(false), 50 * MILLIS);
+        assertTrue(System.nanoTime() - start < 5000 * MILLIS);
+        assertTrue(mcts.getPlayouts() > 0);
+    }
+
+    @Test
+    public void testPoolExhaustion() throws Exception {
+        Mcts mcts = new Mcts(new Evaluator(), 2, 64, true);
+        int move = mcts.search(new ChessBoard(false), 50 * MILLIS);
+        assertTrue(move != 0);
+        assertTrue(mcts.getNodes() <= 64);
+    }
+}
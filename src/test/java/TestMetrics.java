@@ -0,0 +1,60 @@
+import metrics.MethodMetrics;
+import metrics.Metrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestMetrics {
+
+    @Before
+    public void enable() {
+        for (MethodMetrics m : Metrics.all()) {
+            m.reset();
+        }
+        Metrics.setEnabled(true);
+    }
+
+    @After
+    public void disable() {
+        Metrics.setEnabled(false);
+    }
+
+    @Test
+    public void testCountsCallsAndRejects() {
+        ChessBoard board = new ChessBoard();
+        board.playGame(4, 1, 4, 3);
+        try {
+            board.playGame(4, 3, 4, 4);
+        } catch (IllegalArgumentException e) {
+            // expected, it is black's turn
+        }
+        assertEquals(2, Metrics.PLAY_GAME.getCalls());
+        assertEquals(1, Metrics.PLAY_GAME.getRejects("Other player's move"));
+        assertEquals(1, Metrics.IS_VALID_MOVE.getRejects("Other player's move"));
+        assertTrue(Metrics.GET_BOARD.getCalls() >= 2);
+        assertTrue(Metrics.PLAY_GAME.getTotalNanos() > 0);
+        assertTrue(Metrics.PLAY_GAME.getP99Nanos() >= Metrics.PLAY_GAME.getP50Nanos());
+    }
+
+    @Test
+    public void testDisabledRecordsNothing() {
+        Metrics.setEnabled(false);
+        new ChessBoard().playGame(4, 1, 4, 3);
+        assertEquals(0, Metrics.PLAY_GAME.getCalls());
+    }
+
+    @Test
+    public void testMBeans() throws Exception {
+        Metrics.registerMBeans();
+        new ChessBoard().playGame(4, 1, 4, 3);
+        Object calls = ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(new ObjectName("ChessModel:type=Metrics,name=playGame"), "Calls");
+        assertEquals(1L, calls);
+    }
+}
@@ -0,0 +1,86 @@
+import metrics.Metrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestMoveCache {
+
+    @Before
+    public void enable() {
+        Metrics.LEGAL_MOVES.reset();
+        Metrics.setEnabled(true);
+    }
+
+    @After
+    public void disable() {
+        Metrics.setEnabled(false);
+    }
+
+    private static int[] direct(ChessBoard board) {
+        int[] moves = new int[ChessBoard.MAX_MOVES];
+        return Arrays.copyOf(moves, board.legalMoves(moves));
+    }
+
+    @Test
+    public void testHitsAndEviction() {
+        MoveCache cache = new MoveCache(2, Metrics.LEGAL_MOVES);
+        ChessBoard board = new ChessBoard(false);
+        int[] first = cache.legalMoves(board);
+        assertArrayEquals(direct(board), first);
+        assertSame(first, cache.legalMoves(board));
+        assertEquals(1, Metrics.LEGAL_MOVES.getHits());
+        assertEquals(1, Metrics.LEGAL_MOVES.getMisses());
+
+        board.playGame(4, 1, 4, 3);
+        cache.legalMoves(board);
+        board.playGame(4, 6, 4, 4);
+        cache.legalMoves(board);
+        assertEquals(2, cache.size());
+        assertEquals(1, Metrics.LEGAL_MOVES.getEvictions());
+        assertArrayEquals(direct(board), cache.legalMoves(board));
+    }
+
+    @Test
+    public void testConcurrentWalks() throws Exception {
+        final MoveCache cache = new MoveCache(64, Metrics.LEGAL_MOVES);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] walks = new Future<?>[4];
+            for (int i = 0; i < walks.length; i++) {
+                final long seed = i % 2;
+                walks[i] = pool.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int game = 0; game < 20; game++) {
+                        ChessBoard board = new ChessBoard(false);
+                        for (int ply = 0; ply < 12; ply++) {
+                            int[] moves = cache.legalMoves(board);
+                            assertArrayEquals(direct(board), moves);
+                            if (moves.length == 0) {
+                                break;
+                            }
+                            board.doMove(moves[random.nextInt(moves.length)]);
+                        }
+                    }
+                });
+            }
+            for (Future<?> walk : walks) {
+                walk.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(Metrics.LEGAL_MOVES.getHits() > 0);
+        assertTrue(cache.size() <= 64);
+    }
+}
@@ -0,0 +1,116 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestNnue {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIncrementalMatchesRefresh() {
+        Network network = Network.random(64, 5);
+        ChessBoard board = new ChessBoard(false);
+        NnueEvaluator incremental = new NnueEvaluator(network, board);
+        int start = incremental.evaluate();
+        Random random = new Random(11);
+        int[] moves = new int[ChessBoard.MAX_MOVES];
+        int played = 0;
+        for (; played < 60; played++) {
+            int count = board.legalMoves(moves);
+            if (count == 0) {
+                break;
+            }
+            board.doMove(moves[random.nextInt(count)]);
+            int score = incremental.evaluate();
+            NnueEvaluator fresh = new NnueEvaluator(network, board.copy());
+            assertEquals(fresh.evaluate(), score);
+        }
+        for (int i = 0; i < played; i++) {
+            board.undoMove();
+        }
+        assertEquals(start, incremental.evaluate());
+    }
+
+    @Test
+    public void testCastlingUpdate() {
+        Network network = Network.random(32, 9);
+        ChessBoard board = new ChessBoard(false);
+        board.playGame(4, 1, 4, 3);
+        board.playGame(4, 6, 4, 4);
+        board.playGame(6, 0, 5, 2);
+        board.playGame(1, 7, 2, 5);
+        board.playGame(5, 0, 2, 3);
+        board.playGame(5, 7, 2, 4);
+        NnueEvaluator evaluator = new NnueEvaluator(network, board);
+        board.doMove(common.Moves.parse("4060"));
+        assertEquals(new NnueEvaluator(network, board.copy()).evaluate(), evaluator.evaluate());
+    }
+
+    @Test
+    public void testPlayGameRefreshes() {
+        Network network = Network.random(32, 4);
+        ChessBoard board = new ChessBoard(false);
+        NnueEvaluator evaluator = new NnueEvaluator(network, board);
+        board.playGame(4, 1, 4, 3);
+        board.playGame(3, 6, 3, 4);
+        board.playGame(4, 3, 3, 4);
+        assertEquals(new NnueEvaluator(network, board.copy()).evaluate(), evaluator.evaluate());
+        board.doMove(common.Moves.parse("3734"));
+        assertEquals(new NnueEvaluator(network, board.copy()).evaluate(), evaluator.evaluate());
+        board.undoMove();
+        assertEquals(new NnueEvaluator(network, board.copy()).evaluate(), evaluator.evaluate());
+    }
+
+    @Test
+    public void testSearchWithNetwork() {
+        Network network = Network.random(32, 6);
+        ChessBoard board = new ChessBoard(false);
+        board.playGame(5, 1, 5, 2);
+        board.playGame(4, 6, 4, 4);
+        board.playGame(6, 1, 6, 3);
+        long hash = board.getPositionHash();
+        Searcher searcher = new Searcher(network);
+        assertEquals(Searcher.MATE - 1, searcher.search(board, 2));
+        assertEquals("3773", common.Moves.toString(searcher.getBestMove()));
+        assertEquals(hash, board.getPositionHash());
+
+        Match match = new Match(new SearchBot(network, 1), new SearchBot(new Evaluator(), 1), BotBudget.UNLIMITED);
+        match.play();
+        assertEquals("nnue", match.getRecord().get(0).getBot());
+        for (Match.MoveRecord r : match.getRecord()) {
+            assertNull(r.getRejection());
+        }
+    }
+
+    @Test
+    public void testSymmetry() {
+        // the start position looks the same to black as to white
+        Network network = Network.random(32, 3);
+        ChessBoard board = new ChessBoard(false);
+        assertEquals(new NnueEvaluator(network, board).evaluate(),
+                new NnueEvaluator(network, new ChessBoard(board.getBoard(), false)).evaluate());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        Network network = Network.random(16, 7);
+        Path path = folder.getRoot().toPath().resolve("net.bin");
+        network.save(path);
+        Network loaded = Network.load(path);
+        assertArrayEquals(network.featureWeights, loaded.featureWeights);
+        assertArrayEquals(network.hiddenWeights, loaded.hiddenWeights);
+        assertArrayEquals(network.hiddenBias, loaded.hiddenBias);
+        assertArrayEquals(network.outputWeights, loaded.outputWeights);
+        ChessBoard board = new ChessBoard(false);
+        assertEquals(new NnueEvaluator(network, board).evaluate(), new NnueEvaluator(loaded, board).evaluate());
+        assertTrue(NnueEvaluator.benchmark(loaded, 10000000L, true) > 0);
+    }
+}
@@ -0,0 +1,46 @@
+import common.Moves;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestOpeningBook {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCompileAndLookup() throws Exception {
+        Path games = folder.newFile("games.txt").toPath();
+        Path book = folder.getRoot().toPath().resolve("book.bin");
+        Files.write(games, Arrays.asList(
+                "# e4 e5, e4 d5, d4 d5",
+                "4143 4644 6052",
+                "4143 3634",
+                "",
+                "3133 3634"), StandardCharsets.US_ASCII);
+        assertEquals(5, OpeningBookBuilder.compile(games, book, 2));
+
+        try (OpeningBook reader = new OpeningBook(book)) {
+            ChessBoard board = new ChessBoard();
+            assertEquals(Moves.parse("4143"), reader.bestMove(board.getPositionHash()));
+            int first = reader.find(board.getPositionHash());
+            assertEquals(2, reader.weightAt(reader.moveAt(first) == Moves.parse("4143") ? first : first + 1));
+
+            board.playGame(4, 1, 4, 3);
+            int move = reader.pickMove(board.getPositionHash(), new Random(1));
+            assertTrue(move == Moves.parse("4644") || move == Moves.parse("3634"));
+
+            // beyond maxPly
+            board.playGame(4, 6, 4, 4);
+            assertEquals(-1, reader.find(board.getPositionHash()));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestPawnStructure {
+    private static long pawns(int... squares) {
+        long pawns = 0;
+        for (int square : squares) {
+            pawns |= 1L << square;
+        }
+        return pawns;
+    }
+
+    @Test
+    public void testTerms() {
+        int[] terms = new int[PawnStructure.TERMS];
+        // white: a2 and a3 doubled and isolated, e4 isolated; black: g7 and h7 in front of a king on g8, all passed
+        long white = pawns(0 * 8 + 1, 0 * 8 + 2, 4 * 8 + 3);
+        long black = pawns(6 * 8 + 6, 7 * 8 + 6);
+        PawnStructure.count(white, black, 4 * 8 + 0, 6 * 8 + 7, terms);
+        assertEquals(-2, PawnStructure.shield(white, black, 4 * 8 + 0, 6 * 8 + 7));
+        assertEquals(-1, terms[PawnStructure.PASSED + 1]);
+        assertEquals(1, terms[PawnStructure.PASSED + 2]);
+        assertEquals(1, terms[PawnStructure.PASSED + 3]);
+        assertEquals(1, terms[PawnStructure.DOUBLED]);
+        assertEquals(3, terms[PawnStructure.ISOLATED]);
+        assertEquals(-2, terms[PawnStructure.SHIELD]);
+    }
+
+    @Test
+    public void testBackward() {
+        int[] terms = new int[PawnStructure.TERMS];
+        // white d3 behind e4, with a black pawn on c5 guarding d4
+        PawnStructure.count(pawns(3 * 8 + 2, 4 * 8 + 3), pawns(2 * 8 + 4), -1, -1, terms);
+        assertEquals(1, terms[PawnStructure.BACKWARD]);
+        // the black pawn is isolated
+        assertEquals(-1, terms[PawnStructure.ISOLATED]);
+    }
+
+    @Test
+    public void testPawnHash() {
+        ChessBoard board = new ChessBoard(false);
+        long start = board.getPawnHash();
+        board.playGame(6, 0, 5, 2);
+        assertEquals(start, board.getPawnHash());
+        board.playGame(4, 6, 4, 4);
+        assertNotEquals(start, board.getPawnHash());
+        // king moves leave the pawn hash alone
+        long pawnsOnly = board.getPawnHash();
+        board.playGame(4, 1, 4, 2);
+        board.playGame(4, 7, 4, 6);
+        assertNotEquals(pawnsOnly, board.getPawnHash());
+        pawnsOnly = board.getPawnHash();
+        board.playGame(4, 0, 4, 1);
+        assertEquals(pawnsOnly, board.getPawnHash());
+        assertEquals(board.getPawnHash(), board.copy().getPawnHash());
+
+        int[] moves = new int[ChessBoard.MAX_MOVES];
+        long before = board.getPawnHash();
+        board.legalMoves(moves);
+        board.doMove(moves[0]);
+        board.undoMove();
+        assertEquals(before, board.getPawnHash());
+    }
+
+    @Test
+    public void testCacheHitRate() {
+        // once the pieces are out most moves leave the pawns alone
+        ChessBoard board = new ChessBoard(false);
+        board.playGame(4, 1, 4, 3);
+        board.playGame(4, 6, 4, 4);
+        board.playGame(6, 0, 5, 2);
+        board.playGame(1, 7, 2, 5);
+        board.playGame(5, 0, 2, 3);
+        board.playGame(5, 7, 2, 4);
+        Evaluator evaluator = new Evaluator();
+        Searcher searcher = new Searcher(evaluator);
+        for (int i = 0; i < 8; i++) {
+            searcher.search(board, 3);
+            board.doMove(searcher.getBestMove());
+        }
+        assertTrue(String.valueOf(evaluator.getPawnHitRate()), evaluator.getPawnHitRate() > 0.9);
+    }
+}
@@ -0,0 +1,55 @@
+import common.Moves;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class TestPerft {
+    @Test
+    public void testStartPosition() {
+        Perft perft = new Perft(new ForkJoinPool(4), 16, 2);
+        ChessBoard board = new ChessBoard(false);
+        // the published counts of the start position
+        assertEquals(1, perft.count(board, 0));
+        assertEquals(20, perft.count(board, 1));
+        assertEquals(400, perft.count(board, 2));
+        assertEquals(8902, perft.count(board, 3));
+        assertEquals(197281, perft.count(board, 4));
+        // the second run is answered from the cache
+        assertEquals(197281, perft.count(board, 4));
+        assertEquals(20, board.legalMoves(new int[ChessBoard.MAX_MOVES]));
+    }
+
+    @Test
+    public void testPawnsNeedEmptySquaresAhead() {
+        ChessBoard board = new ChessBoard(false);
+        board.playGame(4, 1, 4, 3);
+        board.playGame(4, 6, 4, 4);
+        board.playGame(1, 0, 2, 2);
+        board.playGame(1, 7, 2, 5);
+        // the e-pawns block each other and the knight on c3 blocks both steps of the c-pawn
+        int[] moves = new int[ChessBoard.MAX_MOVES];
+        int count = board.legalMoves(moves);
+        for (int i = 0; i < count; i++) {
+            assertNotEquals(Moves.parse("4344"), moves[i]);
+            assertNotEquals(Moves.parse("2122"), moves[i]);
+            assertNotEquals(Moves.parse("2123"), moves[i]);
+        }
+    }
+
+    @Test
+    public void testCastlingRightsInKey() {
+        ChessBoard board = new ChessBoard(false);
+        board.playGame(4, 1, 4, 3);
+        board.playGame(4, 6, 4, 4);
+        long key = board.getPositionKey();
+        board.playGame(4, 0, 4, 1);
+        board.playGame(4, 7, 4, 6);
+        board.playGame(4, 1, 4, 0);
+        board.playGame(4, 6, 4, 7);
+        assertNotEquals(key, board.getPositionKey());
+        assertEquals(0, board.castlingRights());
+    }
+}
@@ -0,0 +1,67 @@
+import common.Moves;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestPositionIndex {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLookupAcrossSegmentsAndMerge() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        // tiny buffer so every game lands in its own segment
+        PositionIndexWriter writer = new PositionIndexWriter(dir, 4, 100, 5);
+        writer.addGame(10, new int[]{Moves.parse("4143"), Moves.parse("4644")});
+        writer.addGame(11, new int[]{Moves.parse("3133")});
+        writer.addGame(12, new int[]{Moves.parse("4143"), Moves.parse("3634")});
+        // knight out and back repeats the start position within one game
+        writer.addGame(13, new int[]{Moves.parse("6052"), Moves.parse("6755"), Moves.parse("5260"), Moves.parse("5567")});
+        writer.flush();
+
+        ChessBoard board = new ChessBoard();
+        long start = board.getPositionHash();
+        board.playGame(4, 1, 4, 3);
+        long e4 = board.getPositionHash();
+
+        try (PositionIndex index = new PositionIndex(dir)) {
+            assertArrayEquals(new int[]{10, 11, 12, 13}, index.lookup(start));
+            assertArrayEquals(new int[]{10, 12}, index.lookup(e4));
+            assertEquals(0, index.lookup(12345L).length);
+        }
+
+        writer.merge();
+        try (PositionIndex index = new PositionIndex(dir)) {
+            // 12 distinct entries split into segments of at most 5
+            assertEquals(12, index.size());
+            assertEquals(3, index.segmentCount());
+            assertArrayEquals(new int[]{10, 11, 12, 13}, index.lookup(start));
+            assertArrayEquals(new int[]{10, 12}, index.lookup(e4));
+        }
+    }
+
+    @Test
+    public void testTieredMerge() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        // every game fills the buffer and is flushed as a tier 0 segment; pairs of a tier merge into the next
+        PositionIndexWriter writer = new PositionIndexWriter(dir, 3, 2, 1 << 20);
+        int[] moves = {Moves.parse("6052"), Moves.parse("6755")};
+        for (int game = 0; game < 16; game++) {
+            writer.addGame(game, moves);
+            writer.flush();
+            try (PositionIndex index = new PositionIndex(dir)) {
+                // one segment per set bit of the number of flushes, as in a binary counter
+                assertEquals(Integer.bitCount(game + 1), index.segmentCount());
+            }
+        }
+        try (PositionIndex index = new PositionIndex(dir)) {
+            assertEquals(48, index.size());
+            assertEquals(16, index.lookup(new ChessBoard().getPositionHash()).length);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestSelfPlay {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSearchFindsMate() {
+        // fool's mate, black to play Qh4
+        ChessBoard board = new ChessBoard(false);
+        board.playGame(5, 1, 5, 2);
+        board.playGame(4, 6, 4, 4);
+        board.playGame(6, 1, 6, 3);
+        Searcher searcher = new Searcher(new Evaluator());
+        assertEquals(Searcher.MATE - 1, searcher.search(board, 2));
+        assertEquals("3773", common.Moves.toString(searcher.getBestMove()));
+    }
+
+    @Test
+    public void testShardNumberingSkipsGaps() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        byte[] records = {1, 2, 3};
+        try (ShardWriter out = new ShardWriter(dir, 1, 1, false)) {
+            out.write(records, 0, 3);
+        }
+        java.nio.file.Files.delete(dir.resolve("shard-000000.bin"));
+        try (ShardWriter out = new ShardWriter(dir, 1, 1, false)) {
+            out.write(records, 0, 1);
+        }
+        assertEquals(3, ShardWriter.shards(dir).size());
+        assertEquals("shard-000003.bin", ShardWriter.shards(dir).get(2).getFileName().toString());
+        try (InputStream in = ShardWriter.open(dir.resolve("shard-000002.bin"))) {
+            assertEquals(3, in.read());
+        }
+    }
+
+    @Test
+    public void testShards() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        SelfPlay selfPlay = new SelfPlay(new Evaluator(), 1, 4, 12, 1.0, 42);
+        long written;
+        try (ShardWriter out = new ShardWriter(dir, TrainingRecord.BYTES, 5, true)) {
+            written = selfPlay.run(3, 2, out);
+        }
+        assertTrue(written > 0);
+        assertEquals((written + 4) / 5, ShardWriter.shards(dir).size());
+
+        long read = 0;
+        byte[] record = new byte[TrainingRecord.BYTES];
+        for (Path shard : ShardWriter.shards(dir)) {
+            try (InputStream in = ShardWriter.open(shard)) {
+                DataInputStream data = new DataInputStream(in);
+                while (true) {
+                    try {
+                        data.readFully(record);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    ByteBuffer buffer = ByteBuffer.wrap(record);
+                    int kings = 0;
+                    for (int square = 0; square < 64; square++) {
+                        int code = TrainingRecord.piece(buffer, 0, square);
+                        if (code != 0 && TrainingRecord.type(code) == piece.IPiece.KING) {
+                            kings++;
+                        }
+                    }
+                    assertEquals(2, kings);
+                    assertTrue(TrainingRecord.result(buffer, 0) >= TrainingRecord.BLACK_WIN
+                            && TrainingRecord.result(buffer, 0) <= TrainingRecord.WHITE_WIN);
+                    read++;
+                }
+            }
+        }
+        assertEquals(written, read);
+    }
+}
@@ -0,0 +1,67 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import piece.IPiece;
+import piece.King;
+import piece.Queen;
+import piece.Rook;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestTablebase {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testKRK() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        List<Path> written = new TablebaseGenerator().generate("KRK", dir);
+        assertEquals(1, written.size());
+
+        try (Tablebase table = new Tablebase(written.get(0))) {
+            assertEquals("KRK", table.getName());
+
+            // Ra8 mates
+            IPiece[][] grid = new IPiece[8][8];
+            grid[7][7] = new King(7, 7, true, false);
+            grid[6][5] = new King(6, 5, false, false);
+            grid[0][0] = new Rook(0, 0, false, false);
+            assertEquals(1, table.probe(new ChessBoard(grid, true)));
+
+            // same position with colors swapped and the board mirrored
+            grid = new IPiece[8][8];
+            grid[7][0] = new King(7, 0, false, false);
+            grid[6][2] = new King(6, 2, true, false);
+            grid[0][7] = new Rook(0, 7, true, false);
+            assertEquals(1, table.probe(new ChessBoard(grid, false)));
+
+            // the longest win with king and rook is 16 moves
+            int longest = 0;
+            for (int i = 0; i < Tablebase.size(3); i++) {
+                if (Tablebase.isWin(table.probe(i))) {
+                    longest = Math.max(longest, Tablebase.distance(table.probe(i)));
+                }
+            }
+            assertEquals(31, longest);
+        }
+    }
+
+    @Test
+    public void testKQKStalemate() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        new TablebaseGenerator().generate("KQK", dir);
+        try (Tablebase table = new Tablebase(dir.resolve("KQK.tb"))) {
+            IPiece[][] grid = new IPiece[8][8];
+            grid[7][7] = new King(7, 7, true, false);
+            grid[6][5] = new Queen(6, 5, false, false);
+            grid[0][0] = new King(0, 0, false, false);
+            assertEquals(Tablebase.DRAW, table.probe(new ChessBoard(grid, false)));
+            assertTrue(Tablebase.isWin(table.probe(new ChessBoard(grid, true))));
+            assertEquals(Tablebase.NOT_FOUND, table.probe(new ChessBoard()));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestTuner {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLossDecreases() throws Exception {
+        // random games, each position labelled as won by the side with more knights
+        Path dir = folder.getRoot().toPath();
+        Random random = new Random(3);
+        int[] moves = new int[ChessBoard.MAX_MOVES];
+        ByteBuffer records = ByteBuffer.allocate(TrainingRecord.BYTES);
+        try (ShardWriter out = new ShardWriter(dir, TrainingRecord.BYTES, 500, false)) {
+            for (int game = 0; game < 40; game++) {
+                ChessBoard board = new ChessBoard(false);
+                for (int ply = 0; ply < 60; ply++) {
+                    int count = board.legalMoves(moves);
+                    if (count == 0) {
+                        break;
+                    }
+                    board.doMove(moves[random.nextInt(count)]);
+                    int knights = 0;
+                    for (int x = 0; x < 8; x++) {
+                        for (int y = 0; y < 8; y++) {
+                            piece.IPiece p = board.pieceAt(x, y);
+                            if (p != null && p.getType() == piece.IPiece.KNIGHT) {
+                                knights += p.getIsBlack() ? -1 : 1;
+                            }
+                        }
+                    }
+                    records.clear();
+                    TrainingRecord.write(board, 0, records);
+                    TrainingRecord.setResult(records, 0, knights > 0 ? TrainingRecord.WHITE_WIN
+                            : knights < 0 ? TrainingRecord.BLACK_WIN : TrainingRecord.DRAW);
+                    out.write(records.array(), 0, TrainingRecord.BYTES);
+                }
+            }
+        }
+
+        List<Path> shards = ShardWriter.shards(dir);
+        Tuner tuner = new Tuner(new Evaluator(), 1.0, 5.0, 256, new ForkJoinPool(2));
+        double before = tuner.loss(shards);
+        for (int i = 0; i < 5; i++) {
+            tuner.epoch(shards);
+        }
+        double after = tuner.loss(shards);
+        assertTrue(before + " -> " + after, after < before);
+
+        Path params = dir.resolve("params.bin");
+        tuner.getEvaluator().save(params);
+        assertArrayEquals(tuner.getEvaluator().getParams(), Evaluator.load(params).getParams());
+    }
+
+    @Test
+    public void testLoadsFilesWithoutPawnWeights() throws Exception {
+        // the first format: material and piece-square weights only
+        int[] defaults = new Evaluator().getParams();
+        ByteBuffer file = ByteBuffer.allocate(8 + Evaluator.PAWN_TERMS * 4).putInt(0x45564131).putInt(Evaluator.PAWN_TERMS);
+        for (int i = 0; i < Evaluator.PAWN_TERMS; i++) {
+            file.putInt(i == 0 ? 123 : defaults[i]);
+        }
+        Path params = folder.getRoot().toPath().resolve("old.bin");
+        java.nio.file.Files.write(params, file.array());
+        int[] loaded = Evaluator.load(params).getParams();
+        assertEquals(123, loaded[0]);
+        defaults[0] = 123;
+        assertArrayEquals(defaults, loaded);
+    }
+}